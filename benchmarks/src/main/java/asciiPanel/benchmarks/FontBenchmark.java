@@ -0,0 +1,50 @@
+package asciiPanel.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asciiPanel.AsciiFont;
+import asciiPanel.AsciiPanel;
+import asciiPanel.AsciiRenderer;
+
+/**
+ * Measures switching fonts back and forth, as a zoom toggle does, and building a renderer from scratch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FontBenchmark {
+
+    private AsciiPanel panel;
+    private boolean zoomed;
+
+    @Setup
+    public void setUp() {
+        panel = new AsciiPanel(80, 24, AsciiFont.CP437_8x8);
+    }
+
+    @Benchmark
+    public AsciiPanel setAsciiFont() {
+        zoomed = !zoomed;
+        panel.setAsciiFont(zoomed ? AsciiFont.CP437_16x16 : AsciiFont.CP437_8x8);
+        return panel;
+    }
+
+    @Benchmark
+    public AsciiRenderer newRenderer() {
+        return new AsciiRenderer(80, 24, AsciiFont.CP437_9x16);
+    }
+}
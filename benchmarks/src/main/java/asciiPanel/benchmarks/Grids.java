@@ -0,0 +1,68 @@
+package asciiPanel.benchmarks;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.Random;
+
+import asciiPanel.AsciiFont;
+import asciiPanel.CellBuffer;
+
+/**
+ * Helpers shared by the benchmarks for turning parameters into panels and filling them.
+ */
+final class Grids {
+    private Grids() {}
+
+    /**
+     * Parses a size such as "80x24" into a width and height in characters.
+     */
+    static Dimension size(String size) {
+        int x = size.indexOf('x');
+        return new Dimension(Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)));
+    }
+
+    /**
+     * Looks up one of the AsciiFont constants by name, such as "CP437_9x16".
+     */
+    static AsciiFont font(String name) {
+        try {
+            return (AsciiFont) AsciiFont.class.getField(name).get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("unknown font " + name, e);
+        }
+    }
+
+    /**
+     * Fills every cell with a random character and random opaque colors.
+     */
+    static void fillRandomly(CellBuffer cells, long seed) {
+        Random random = new Random(seed);
+        for (int y = 0; y < cells.getHeight(); y++) {
+            for (int x = 0; x < cells.getWidth(); x++) {
+                cells.set(x, y, (char) random.nextInt(256), 0xff000000 | random.nextInt(), 0xff000000 | random.nextInt());
+            }
+        }
+    }
+
+    /**
+     * Picks a random, repeatable subset of cell indices covering the given percentage of the grid.
+     */
+    static int[] pickCells(int count, int percent, long seed) {
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++)
+            indices[i] = i;
+
+        Random random = new Random(seed);
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = indices[i];
+            indices[i] = indices[j];
+            indices[j] = t;
+        }
+
+        int[] picked = new int[count * percent / 100];
+        System.arraycopy(indices, 0, picked, 0, picked.length);
+        Arrays.sort(picked);
+        return picked;
+    }
+}
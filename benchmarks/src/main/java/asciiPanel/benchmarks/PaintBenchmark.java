@@ -0,0 +1,86 @@
+package asciiPanel.benchmarks;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asciiPanel.AsciiPanel;
+import asciiPanel.CellBuffer;
+import asciiPanel.RenderMode;
+
+/**
+ * Measures <code>AsciiPanel.paint</code> into an offscreen <code>Graphics</code> when 0%, 5% or 100%
+ * of the cells changed since the previous frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark {
+
+    @Param({ "80x24", "200x60", "320x100" })
+    public String size;
+
+    @Param({ "CP437_9x16", "CP437_16x16" })
+    public String font;
+
+    @Param({ "0", "5", "100" })
+    public int changedPercent;
+
+    @Param({ "LOOKUP_OP", "RASTER" })
+    public RenderMode mode;
+
+    private AsciiPanel panel;
+    private CellBuffer cells;
+    private Graphics graphics;
+    private int[] changed;
+    private int frame;
+
+    @Setup
+    public void setUp() {
+        Dimension grid = Grids.size(size);
+        panel = new AsciiPanel(grid.width, grid.height, Grids.font(font));
+        panel.setRenderMode(mode);
+        cells = panel.getCells();
+        Grids.fillRandomly(cells, 1);
+
+        BufferedImage screen = new BufferedImage(panel.getPreferredSize().width, panel.getPreferredSize().height, BufferedImage.TYPE_INT_RGB);
+        graphics = screen.getGraphics();
+        panel.paint(graphics);
+
+        changed = Grids.pickCells(grid.width * grid.height, changedPercent, 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public void paint() {
+        frame++;
+        char character = (frame & 1) == 0 ? 'a' : 'b';
+        int foreground = 0xff000000 | frame * 0x010101;
+        int width = cells.getWidth();
+        for (int i : changed)
+            cells.set(i % width, i / width, character, foreground, 0xff000000);
+
+        panel.paint(graphics);
+    }
+}
@@ -0,0 +1,53 @@
+package asciiPanel.benchmarks;
+
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asciiPanel.AsciiRenderer;
+
+/**
+ * Measures full headless frames rendered into a caller-supplied pixel array, as for replay thumbnails.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RendererBenchmark {
+
+    @Param({ "80x24", "200x60" })
+    public String size;
+
+    @Param({ "CP437_8x8", "CP437_9x16" })
+    public String font;
+
+    private AsciiRenderer renderer;
+    private int[] pixels;
+
+    @Setup
+    public void setUp() {
+        Dimension grid = Grids.size(size);
+        renderer = new AsciiRenderer(grid.width, grid.height, Grids.font(font));
+        Grids.fillRandomly(renderer.getCells(), 4);
+        pixels = new int[renderer.getPixelWidth() * renderer.getPixelHeight()];
+    }
+
+    @Benchmark
+    public int[] renderFullFrame() {
+        renderer.render(pixels, 0, renderer.getPixelWidth());
+        return pixels;
+    }
+}
@@ -0,0 +1,77 @@
+package asciiPanel.benchmarks;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import asciiPanel.AsciiCharacterData;
+import asciiPanel.AsciiPanel;
+import asciiPanel.TileTransformer;
+
+/**
+ * Measures the model-side hot paths that do not paint: writing strings, clearing and withEachTile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class WriteBenchmark {
+
+    @Param({ "80x24", "200x60" })
+    public String size;
+
+    private static final String LINE = "The goblin hits you. You feel weaker!";
+
+    private AsciiPanel panel;
+    private int row;
+    private TileTransformer darken;
+
+    @Setup
+    public void setUp() {
+        Dimension grid = Grids.size(size);
+        panel = new AsciiPanel(grid.width, grid.height);
+        Grids.fillRandomly(panel.getCells(), 3);
+        darken = new TileTransformer() {
+            public void transformTile(int x, int y, AsciiCharacterData data) {
+                if (((x ^ y) & 7) == 0)
+                    data.backgroundColor = AsciiPanel.black;
+            }
+        };
+    }
+
+    @Benchmark
+    public AsciiPanel writeString() {
+        row = (row + 1) % panel.getHeightInCharacters();
+        return panel.write(LINE, 0, row, AsciiPanel.brightWhite, AsciiPanel.blue);
+    }
+
+    @Benchmark
+    public AsciiPanel writeStringComputedColor() {
+        row = (row + 1) % panel.getHeightInCharacters();
+        return panel.write(LINE, 0, row, new Color(row * 4, 128, 255 - row * 4), AsciiPanel.black);
+    }
+
+    @Benchmark
+    public AsciiPanel clear() {
+        return panel.clear();
+    }
+
+    @Benchmark
+    public void withEachTile() {
+        panel.withEachTile(darken);
+    }
+}
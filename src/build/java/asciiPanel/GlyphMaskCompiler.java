@@ -0,0 +1,124 @@
+package asciiPanel;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Build step that turns font sprite sheets into the compact precompiled glyph format GlyphAtlas loads
+ * without any image decoding. It runs during the build and is not part of the library.
+ * <p>
+ * The format is big-endian: the magic bytes <code>AGLM</code>, a version byte, the glyph width, height
+ * and count as unsigned shorts, then for each glyph its pixels in row-major order packed one bit per
+ * pixel, most significant bit first, padded to a whole byte. A set bit is a foreground pixel.
+ * <p>
+ * Only two-tone sheets can be represented: every pixel must be opaque, and either black or non-zero in
+ * all of red, green and blue. Other sheets are skipped and keep loading from the PNG.
+ */
+public final class GlyphMaskCompiler {
+
+    private GlyphMaskCompiler() {}
+
+    /**
+     * Compiles the sprite sheets of every page of every AsciiFont constant. Missing and other than
+     * two-tone sheets are skipped quietly; nothing is printed unless something fails.
+     * @param args the directory holding the sheets and the directory to write the compiled files to
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: GlyphMaskCompiler <sheet directory> <output directory>");
+            System.exit(1);
+        }
+
+        File sheets = new File(args[0]);
+        File output = new File(args[1]);
+        if (!output.isDirectory() && !output.mkdirs())
+            throw new IOException("cannot create " + output);
+
+        for (Field field : AsciiFont.class.getFields()) {
+            if (field.getType() != AsciiFont.class || !Modifier.isStatic(field.getModifiers()))
+                continue;
+
+            AsciiFont font;
+            try {
+                font = (AsciiFont) field.get(null);
+            } catch (IllegalAccessException e) {
+                continue;
+            }
+
+            for (int page = 0; page < font.getPageCount(); page++) {
+                File sheet = new File(sheets, font.getPageFilename(page));
+                File compiled = new File(output, GlyphAtlas.compiledFilename(font.getPageFilename(page)));
+                if (sheet.isFile())
+                    compile(sheet, font.getWidth(), font.getHeight(), compiled);
+            }
+        }
+    }
+
+    /**
+     * Compiles one 16 by 16 glyph sprite sheet.
+     * @param sheet     the PNG to read
+     * @param width     the width, in pixels, of a glyph
+     * @param height    the height, in pixels, of a glyph
+     * @param compiled  the file to write
+     * @return false if the sheet is not two-tone and nothing was written
+     * @throws IOException
+     */
+    public static boolean compile(File sheet, int width, int height, File compiled) throws IOException {
+        BufferedImage image = ImageIO.read(sheet);
+        if (image == null)
+            throw new IOException("cannot decode " + sheet);
+
+        if (image.getWidth() < width * 16 || image.getHeight() < height * 16)
+            throw new IOException(sheet + " is smaller than 16x16 glyphs of " + width + "x" + height);
+
+        int bytesPerGlyph = (width * height + 7) >>> 3;
+        byte[] bits = new byte[256 * bytesPerGlyph];
+
+        for (int glyph = 0; glyph < 256; glyph++) {
+            int sx = (glyph % 16) * width;
+            int sy = (glyph / 16) * height;
+            int base = glyph * bytesPerGlyph;
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int argb = image.getRGB(sx + x, sy + y);
+                    if ((argb >>> 24) != 0xff)
+                        return false;
+
+                    boolean red = (argb & 0xff0000) != 0;
+                    boolean green = (argb & 0x00ff00) != 0;
+                    boolean blue = (argb & 0x0000ff) != 0;
+                    if (red != green || green != blue)
+                        return false;
+
+                    if (red) {
+                        int i = y * width + x;
+                        bits[base + (i >>> 3)] |= 0x80 >>> (i & 7);
+                    }
+                }
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compiled)));
+        try {
+            out.writeInt(GlyphAtlas.COMPILED_MAGIC);
+            out.writeByte(GlyphAtlas.COMPILED_VERSION);
+            out.writeShort(width);
+            out.writeShort(height);
+            out.writeShort(256);
+            out.write(bits);
+        } finally {
+            out.close();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,22 @@
+package asciiPanel;
+
+/**
+ * The colors an AnsiTerminal uses to reproduce cell colors.
+ */
+public enum AnsiColorMode {
+    /**
+     * Sends each color exactly as 24-bit RGB.
+     */
+    TRUECOLOR,
+
+    /**
+     * Sends the nearest color of the xterm 256 color palette, leaving out its first 16 entries
+     * because terminals disagree on what they look like.
+     */
+    PALETTE_256,
+
+    /**
+     * Sends the nearest of the 16 standard colors, matched against AsciiPanel's default colors.
+     */
+    PALETTE_16
+}
@@ -0,0 +1,538 @@
+package asciiPanel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Shows cells on a text terminal, such as an SSH or telnet connection, using ANSI escape sequences.
+ * One instance is kept per connection: it remembers what that terminal is showing, so each
+ * <code>update</code> only sends the cells that differ, picks the shortest way to move the cursor to
+ * them and leaves out color changes that are already in effect.
+ * <p>
+ * Characters are treated as code page 437 and sent as the matching Unicode characters in UTF-8;
+ * characters from 256 up are sent as they are. Output is buffered and flushed once per update.
+ * <p>
+ * This class is not thread safe.
+ */
+public class AnsiTerminal {
+    private static final String CP437 = ""
+            + " \u263a\u263b\u2665\u2666\u2663\u2660\u2022\u25d8\u25cb\u25d9\u2642\u2640\u266a\u266b\u263c"
+            + "\u25ba\u25c4\u2195\u203c\u00b6\u00a7\u25ac\u21a8\u2191\u2193\u2192\u2190\u221f\u2194\u25b2\u25bc"
+            + " !\"#$%&'()*+,-./"
+            + "0123456789:;<=>?"
+            + "@ABCDEFGHIJKLMNO"
+            + "PQRSTUVWXYZ[\\]^_"
+            + "`abcdefghijklmno"
+            + "pqrstuvwxyz{|}~\u2302"
+            + "\u00c7\u00fc\u00e9\u00e2\u00e4\u00e0\u00e5\u00e7\u00ea\u00eb\u00e8\u00ef\u00ee\u00ec\u00c4\u00c5"
+            + "\u00c9\u00e6\u00c6\u00f4\u00f6\u00f2\u00fb\u00f9\u00ff\u00d6\u00dc\u00a2\u00a3\u00a5\u20a7\u0192"
+            + "\u00e1\u00ed\u00f3\u00fa\u00f1\u00d1\u00aa\u00ba\u00bf\u2310\u00ac\u00bd\u00bc\u00a1\u00ab\u00bb"
+            + "\u2591\u2592\u2593\u2502\u2524\u2561\u2562\u2556\u2555\u2563\u2551\u2557\u255d\u255c\u255b\u2510"
+            + "\u2514\u2534\u252c\u251c\u2500\u253c\u255e\u255f\u255a\u2554\u2569\u2566\u2560\u2550\u256c\u2567"
+            + "\u2568\u2564\u2565\u2559\u2558\u2552\u2553\u256b\u256a\u2518\u250c\u2588\u2584\u258c\u2590\u2580"
+            + "\u03b1\u00df\u0393\u03c0\u03a3\u03c3\u00b5\u03c4\u03a6\u0398\u03a9\u03b4\u221e\u03c6\u03b5\u2229"
+            + "\u2261\u00b1\u2265\u2264\u2320\u2321\u00f7\u2248\u00b0\u2219\u00b7\u221a\u207f\u00b2\u25a0\u00a0";
+
+    // the defaults of AsciiPanel's black through brightWhite, in SGR order
+    private static final int[] STANDARD_COLORS = {
+        0x000000, 0x800000, 0x008000, 0x808000, 0x000080, 0x800080, 0x008080, 0xc0c0c0,
+        0x808080, 0xff0000, 0x00ff00, 0xffff00, 0x0000ff, 0xff00ff, 0x00ffff, 0xffffff
+    };
+
+    private static final int[] CUBE_LEVELS = { 0, 95, 135, 175, 215, 255 };
+
+    // the longest run of unchanged cells worth reprinting instead of moving the cursor over
+    private static final int MAX_REPRINT = 8;
+
+    private final int width;
+    private final int height;
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final CellBuffer shown;
+    private AnsiColorMode colorMode = AnsiColorMode.TRUECOLOR;
+    private boolean shownValid;
+    private int cursorX = -1;
+    private int cursorY = -1;
+    private int currentForeground = -1;
+    private int currentBackground = -1;
+    private byte[] buffer = new byte[8192];
+    private int size;
+    private long bytesWritten;
+    private int lastUpdateBytes;
+
+    /**
+     * Class constructor writing to a stream.
+     * @param out    the connection to write to
+     * @param width  the width in characters of what is shown
+     * @param height the height in characters of what is shown
+     */
+    public AnsiTerminal(OutputStream out, int width, int height) {
+        this(notNull(out, "out"), null, width, height);
+    }
+
+    /**
+     * Class constructor writing to a channel.
+     * @param channel the connection to write to
+     * @param width   the width in characters of what is shown
+     * @param height  the height in characters of what is shown
+     */
+    public AnsiTerminal(WritableByteChannel channel, int width, int height) {
+        this(null, notNull(channel, "channel"), width, height);
+    }
+
+    private static <T> T notNull(T value, String name) {
+        if (value == null)
+            throw new NullPointerException(name + " must not be null.");
+
+        return value;
+    }
+
+    private AnsiTerminal(OutputStream out, WritableByteChannel channel, int width, int height) {
+        if (width < 1)
+            throw new IllegalArgumentException("width " + width + " must be greater than 0." );
+
+        if (height < 1)
+            throw new IllegalArgumentException("height " + height + " must be greater than 0." );
+
+        this.out = out;
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.shown = new CellBuffer(width, height);
+    }
+
+    /**
+     * Gets the width in characters of what is shown.
+     * @return
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height in characters of what is shown.
+     * @return
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the colors used to reproduce cell colors.
+     * @return
+     */
+    public AnsiColorMode getColorMode() {
+        return colorMode;
+    }
+
+    /**
+     * Sets the colors used to reproduce cell colors. The whole screen is sent again on the next update.
+     * @param colorMode
+     */
+    public void setColorMode(AnsiColorMode colorMode) {
+        if (colorMode == null)
+            throw new NullPointerException("colorMode must not be null.");
+
+        if (this.colorMode == colorMode)
+            return;
+
+        this.colorMode = colorMode;
+        reset();
+    }
+
+    /**
+     * Forgets what the terminal is showing, so the next update clears it and sends every cell.
+     * Use this after the remote terminal was resized or otherwise disturbed.
+     */
+    public void reset() {
+        shownValid = false;
+    }
+
+    /**
+     * Gets the number of bytes sent so far.
+     * @return
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gets the number of bytes the last update sent.
+     * @return
+     */
+    public int getLastUpdateBytes() {
+        return lastUpdateBytes;
+    }
+
+    /**
+     * Sends whatever differs between the cells and what the terminal shows, then flushes.
+     * @param cells the cells to show, the same size as this terminal
+     * @throws IOException
+     */
+    public void update(CellBuffer cells) throws IOException {
+        if (cells.getWidth() != width || cells.getHeight() != height)
+            throw new IllegalArgumentException("cells are " + cells.getWidth() + "x" + cells.getHeight()
+                    + " but must be " + width + "x" + height + "." );
+
+        cells.syncView();
+        cells.resolveIndexedColors();
+        long before = bytesWritten + size;
+
+        if (!shownValid) {
+            // reset attributes, hide the cursor and clear the screen
+            writeAscii("\u001b[0m\u001b[?25l\u001b[2J");
+            cursorX = -1;
+            cursorY = -1;
+            currentForeground = -1;
+            currentBackground = -1;
+        }
+
+        char[] glyphs = cells.glyphs;
+        int[] foregrounds = cells.foregrounds;
+        int[] backgrounds = cells.backgrounds;
+        char[] shownGlyphs = shown.glyphs;
+        int[] shownForegrounds = shown.foregrounds;
+        int[] shownBackgrounds = shown.backgrounds;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                char glyph = glyphs[i];
+                int foreground = foregrounds[i];
+                int background = backgrounds[i];
+
+                // a surrogate pair in neighbouring cells is sent as one character
+                boolean pair = Character.isHighSurrogate(glyph) && x + 1 < width && Character.isLowSurrogate(glyphs[i + 1]);
+
+                if (shownValid
+                        && glyph == shownGlyphs[i]
+                        && foreground == shownForegrounds[i]
+                        && background == shownBackgrounds[i]
+                        && (!pair || glyphs[i + 1] == shownGlyphs[i + 1]
+                                && foregrounds[i + 1] == shownForegrounds[i + 1]
+                                && backgrounds[i + 1] == shownBackgrounds[i + 1])) {
+                    if (pair)
+                        x++;
+                    continue;
+                }
+
+                moveTo(x, y, cells);
+                setColors(mapColor(foreground), mapColor(background));
+                if (pair) {
+                    writeCodePoint(Character.toCodePoint(glyph, glyphs[i + 1]));
+                    // terminals disagree on how many columns it takes, so the next move is absolute
+                    cursorX = -1;
+                    shownGlyphs[i + 1] = glyphs[i + 1];
+                    shownForegrounds[i + 1] = foregrounds[i + 1];
+                    shownBackgrounds[i + 1] = backgrounds[i + 1];
+                } else {
+                    writeGlyph(glyph);
+                    advance();
+                }
+
+                shownGlyphs[i] = glyph;
+                shownForegrounds[i] = foreground;
+                shownBackgrounds[i] = background;
+                if (pair)
+                    x++;
+            }
+        }
+
+        shownValid = true;
+        flush();
+        lastUpdateBytes = (int) (bytesWritten - before);
+    }
+
+    private void advance() {
+        // after the last column the cursor waits to wrap, which terminals handle differently
+        if (++cursorX >= width)
+            cursorX = -1;
+    }
+
+    /**
+     * Moves the cursor using whichever of an absolute move, a relative move, carriage return and
+     * line feeds, or reprinting the unchanged cells in between is shortest.
+     */
+    private void moveTo(int x, int y, CellBuffer cells) {
+        if (cursorX == x && cursorY == y)
+            return;
+
+        int best = 4 + digits(y + 1) + digits(x + 1);
+        int method = 0;
+
+        if (cursorY == y && cursorX >= 0) {
+            if (x > cursorX) {
+                int cost = relativeCost(x - cursorX);
+                if (cost < best) {
+                    best = cost;
+                    method = 1;
+                }
+
+                cost = reprintCost(cells, cursorX, x, y);
+                if (cost < best) {
+                    best = cost;
+                    method = 2;
+                }
+            } else {
+                int cost = relativeCost(cursorX - x);
+                if (cost < best) {
+                    best = cost;
+                    method = 3;
+                }
+            }
+        }
+
+        if (cursorY >= 0 && y >= cursorY && (y > cursorY || cursorX != 0)) {
+            int cost = 1 + (y - cursorY) + (x == 0 ? 0 : relativeCost(x));
+            if (cost < best) {
+                best = cost;
+                method = 4;
+            }
+        }
+
+        switch (method) {
+        case 0:
+            writeAscii("\u001b[");
+            writeNumber(y + 1);
+            write(';');
+            writeNumber(x + 1);
+            write('H');
+            break;
+        case 1:
+            writeRelative(x - cursorX, 'C');
+            break;
+        case 2:
+            for (int i = cursorX; i < x; i++)
+                writeGlyph(cells.glyphs[y * width + i]);
+            break;
+        case 3:
+            writeRelative(cursorX - x, 'D');
+            break;
+        default:
+            write('\r');
+            for (int i = cursorY; i < y; i++)
+                write('\n');
+            if (x > 0)
+                writeRelative(x, 'C');
+            break;
+        }
+
+        cursorX = x;
+        cursorY = y;
+    }
+
+    private static int relativeCost(int distance) {
+        return distance == 1 ? 3 : 3 + digits(distance);
+    }
+
+    /**
+     * Gets the bytes needed to reprint cells [from, to) of a row, or Integer.MAX_VALUE if that would
+     * need a color change or is too long to be worth it.
+     */
+    private int reprintCost(CellBuffer cells, int from, int to, int y) {
+        if (!shownValid || to - from > MAX_REPRINT)
+            return Integer.MAX_VALUE;
+
+        int cost = 0;
+        for (int i = y * width + from; i < y * width + to; i++) {
+            if (mapColor(cells.foregrounds[i]) != currentForeground || mapColor(cells.backgrounds[i]) != currentBackground)
+                return Integer.MAX_VALUE;
+
+            char glyph = cells.glyphs[i];
+            if (Character.isSurrogate(glyph))
+                return Integer.MAX_VALUE;
+
+            cost += utf8Length(toUnicode(glyph));
+        }
+        return cost;
+    }
+
+    private void writeRelative(int distance, char direction) {
+        writeAscii("\u001b[");
+        if (distance != 1)
+            writeNumber(distance);
+        write(direction);
+    }
+
+    /**
+     * Sends a select graphic rendition sequence for whichever colors are not already in effect.
+     */
+    private void setColors(int foreground, int background) {
+        boolean foregroundChanged = foreground != currentForeground;
+        boolean backgroundChanged = background != currentBackground;
+        if (!foregroundChanged && !backgroundChanged)
+            return;
+
+        writeAscii("\u001b[");
+        if (foregroundChanged)
+            writeColor(foreground, false);
+        if (foregroundChanged && backgroundChanged)
+            write(';');
+        if (backgroundChanged)
+            writeColor(background, true);
+        write('m');
+
+        currentForeground = foreground;
+        currentBackground = background;
+    }
+
+    private void writeColor(int color, boolean background) {
+        switch (colorMode) {
+        case TRUECOLOR:
+            writeAscii(background ? "48;2;" : "38;2;");
+            writeNumber(color >> 16 & 0xff);
+            write(';');
+            writeNumber(color >> 8 & 0xff);
+            write(';');
+            writeNumber(color & 0xff);
+            break;
+        case PALETTE_256:
+            writeAscii(background ? "48;5;" : "38;5;");
+            writeNumber(color);
+            break;
+        default:
+            writeNumber((color < 8 ? 30 : 90 - 8) + color + (background ? 10 : 0));
+            break;
+        }
+    }
+
+    /**
+     * Gets what a packed ARGB color is sent as: the RGB value, or an index in the current palette.
+     */
+    int mapColor(int argb) {
+        int red = argb >> 16 & 0xff;
+        int green = argb >> 8 & 0xff;
+        int blue = argb & 0xff;
+
+        switch (colorMode) {
+        case TRUECOLOR:
+            return argb & 0xffffff;
+        case PALETTE_256:
+            return nearest256(red, green, blue);
+        default:
+            return nearest16(red, green, blue);
+        }
+    }
+
+    private static int nearest256(int red, int green, int blue) {
+        int r = cubeIndex(red);
+        int g = cubeIndex(green);
+        int b = cubeIndex(blue);
+        int cube = 16 + 36 * r + 6 * g + b;
+        int cubeDistance = distance(red, green, blue, CUBE_LEVELS[r], CUBE_LEVELS[g], CUBE_LEVELS[b]);
+
+        int average = (red + green + blue) / 3;
+        int gray = average < 8 ? 0 : Math.min(23, (average - 3) / 10);
+        int level = 8 + 10 * gray;
+        int grayDistance = distance(red, green, blue, level, level, level);
+
+        return grayDistance < cubeDistance ? 232 + gray : cube;
+    }
+
+    private static int cubeIndex(int value) {
+        return value < 48 ? 0 : value < 115 ? 1 : (value - 35) / 40;
+    }
+
+    private static int nearest16(int red, int green, int blue) {
+        int best = 0;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < STANDARD_COLORS.length; i++) {
+            int color = STANDARD_COLORS[i];
+            int d = distance(red, green, blue, color >> 16, color >> 8 & 0xff, color & 0xff);
+            if (d < bestDistance) {
+                best = i;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    private static int distance(int r1, int g1, int b1, int r2, int g2, int b2) {
+        int r = r1 - r2;
+        int g = g1 - g2;
+        int b = b1 - b2;
+        return r * r + g * g + b * b;
+    }
+
+    /**
+     * Gets the Unicode character shown for a code page 437 glyph index.
+     * @param glyph
+     * @return
+     */
+    static char toUnicode(char glyph) {
+        return glyph < 256 ? CP437.charAt(glyph) : glyph;
+    }
+
+    private static int utf8Length(char c) {
+        return c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+    }
+
+    private static int digits(int value) {
+        return value < 10 ? 1 : value < 100 ? 2 : value < 1000 ? 3 : value < 10000 ? 4 : 5;
+    }
+
+    /**
+     * Writes a single glyph. A surrogate on its own is not a character and is sent as a question mark.
+     */
+    private void writeGlyph(char glyph) {
+        char c = toUnicode(glyph);
+        writeCodePoint(Character.isSurrogate(c) ? '?' : c);
+    }
+
+    private void writeCodePoint(int c) {
+        if (c < 0x80) {
+            write(c);
+        } else if (c < 0x800) {
+            write(0xc0 | c >> 6);
+            write(0x80 | c & 0x3f);
+        } else if (c < 0x10000) {
+            write(0xe0 | c >> 12);
+            write(0x80 | c >> 6 & 0x3f);
+            write(0x80 | c & 0x3f);
+        } else {
+            write(0xf0 | c >> 18);
+            write(0x80 | c >> 12 & 0x3f);
+            write(0x80 | c >> 6 & 0x3f);
+            write(0x80 | c & 0x3f);
+        }
+    }
+
+    private void writeNumber(int value) {
+        if (value >= 10)
+            writeNumber(value / 10);
+        write('0' + value % 10);
+    }
+
+    private void writeAscii(String text) {
+        for (int i = 0; i < text.length(); i++)
+            write(text.charAt(i));
+    }
+
+    private void write(int b) {
+        if (size == buffer.length) {
+            byte[] grown = new byte[size * 2];
+            System.arraycopy(buffer, 0, grown, 0, size);
+            buffer = grown;
+        }
+        buffer[size++] = (byte) b;
+    }
+
+    private void flush() throws IOException {
+        if (size == 0)
+            return;
+
+        int length = size;
+        size = 0;
+        if (out != null) {
+            out.write(buffer, 0, length);
+            out.flush();
+        } else {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, length);
+            while (bytes.hasRemaining())
+                channel.write(bytes);
+        }
+        bytesWritten += length;
+    }
+}
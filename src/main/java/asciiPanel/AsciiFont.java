@@ -37,9 +37,84 @@ public class AsciiFont {
 		return height;
 	}
 
+	/**
+	 * The most pages a font can have: enough for every char value.
+	 */
+	public static final int MAXIMUM_PAGE_COUNT = 256;
+
+	private String pageFilenamePattern;
+
+	private int pageCount;
+
+	/**
+	 * Gets the number of pages of 256 glyphs. Glyph code <code>c</code> is on page <code>c >> 8</code>.
+	 * @return
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+
+	/**
+	 * Gets the sprite sheet file of a page; for a single page font this is the font filename.
+	 * @param page
+	 * @return
+	 */
+	public String getPageFilename(int page) {
+		if (page < 0 || page >= pageCount)
+			throw new IllegalArgumentException("page " + page + " must be within range [0," + pageCount + ")." );
+
+		return pageCount == 1 ? fontFilename : String.format(pageFilenamePattern, page);
+	}
+
 	public AsciiFont(String filename, int width, int height) {
 		this.fontFilename = filename;
 		this.width = width;
 		this.height = height;
+		this.pageFilenamePattern = filename;
+		this.pageCount = 1;
+	}
+
+	/**
+	 * Class constructor for a font of several pages, each a 16 by 16 sprite sheet of its own, such as
+	 * one page per Unicode block or per tileset. Pages are only loaded once a glyph on them is drawn.
+	 * @param filenamePattern the sheet filename of a page as a <code>String.format</code> pattern of
+	 *                        the page number, such as <code>"unicode_8x8_%02x.png"</code>
+	 * @param width
+	 * @param height
+	 * @param pageCount       the number of pages, from 1 to <code>MAXIMUM_PAGE_COUNT</code>
+	 */
+	public AsciiFont(String filenamePattern, int width, int height, int pageCount) {
+		if (pageCount < 1 || pageCount > MAXIMUM_PAGE_COUNT)
+			throw new IllegalArgumentException("pageCount " + pageCount + " must be within range [1," + MAXIMUM_PAGE_COUNT + "]." );
+
+		this.pageFilenamePattern = filenamePattern;
+		this.pageCount = pageCount;
+		this.fontFilename = pageCount == 1 ? filenamePattern : String.format(filenamePattern, 0);
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Two fonts are equal if they load the same files with the same glyph size,
+	 * so they can share one GlyphAtlas.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof AsciiFont))
+			return false;
+
+		AsciiFont font = (AsciiFont) other;
+		return width == font.width && height == font.height && pageCount == font.pageCount
+				&& (pageFilenamePattern == null ? font.pageFilenamePattern == null : pageFilenamePattern.equals(font.pageFilenamePattern));
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = pageFilenamePattern == null ? 0 : pageFilenamePattern.hashCode();
+		hash = hash * 31 + width;
+		hash = hash * 31 + height;
+		return hash * 31 + pageCount;
 	}
 }
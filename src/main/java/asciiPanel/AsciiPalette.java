@@ -0,0 +1,145 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * A table of up to 256 packed ARGB colors that cells written with <code>AsciiPanel.writeIndexed</code>
+ * refer to by index. Changing an entry of a panel's palette recolors every cell written with that
+ * index, so a day and night cycle or a damage flash is a handful of palette changes instead of
+ * rewriting the whole screen. The cells keep their indices and are only marked for repainting; their
+ * colors are looked up again when they are next drawn.
+ * <p>
+ * A new palette starts with the 16 standard colors of AsciiPanel, <code>black</code> to
+ * <code>brightWhite</code>, as entries 0 to 15; any further entries start black.
+ */
+public class AsciiPalette {
+
+    /**
+     * The most entries a palette can have, so that every index fits in a byte.
+     */
+    public static final int MAXIMUM_SIZE = 256;
+
+    private static final int[] STANDARD_COLORS = {
+        0xff000000, 0xff800000, 0xff008000, 0xff808000, 0xff000080, 0xff800080, 0xff008080, 0xffc0c0c0,
+        0xff808080, 0xffff0000, 0xff00ff00, 0xffffff00, 0xff0000ff, 0xffff00ff, 0xff00ffff, 0xffffffff
+    };
+
+    /**
+     * Told about every change to the palette's colors, once per call that changes any.
+     */
+    interface ChangeListener {
+        /**
+         * @param changed a bitset of the entries that changed; must not be modified or kept
+         */
+        void colorsChanged(long[] changed);
+    }
+
+    final int[] colors;
+    private final long[] changed;
+    ChangeListener changeListener;
+
+    /**
+     * Class constructor specifying the number of entries.
+     * @param size the number of entries, from 1 to <code>MAXIMUM_SIZE</code>
+     */
+    public AsciiPalette(int size) {
+        if (size < 1 || size > MAXIMUM_SIZE)
+            throw new IllegalArgumentException("size " + size + " must be within range [1," + MAXIMUM_SIZE + "]." );
+
+        colors = new int[size];
+        changed = new long[(size + 63) >>> 6];
+        for (int i = 0; i < size; i++)
+            colors[i] = i < STANDARD_COLORS.length ? STANDARD_COLORS[i] : 0xff000000;
+    }
+
+    /**
+     * Gets the number of entries.
+     * @return
+     */
+    public int size() {
+        return colors.length;
+    }
+
+    /**
+     * Gets the packed ARGB color of an entry.
+     * @param index
+     * @return
+     */
+    public int get(int index) {
+        checkIndex(index);
+        return colors[index];
+    }
+
+    /**
+     * Gets the color of an entry.
+     * @param index
+     * @return
+     */
+    public Color getColor(int index) {
+        return new Color(get(index), true);
+    }
+
+    /**
+     * Sets the color of an entry.
+     * @param index
+     * @param color the packed ARGB color
+     */
+    public void set(int index, int color) {
+        checkIndex(index);
+
+        if (colors[index] == color)
+            return;
+
+        colors[index] = color;
+        if (changeListener != null) {
+            Arrays.fill(changed, 0L);
+            changed[index >>> 6] = 1L << index;
+            changeListener.colorsChanged(changed);
+        }
+    }
+
+    /**
+     * Sets the color of an entry.
+     * @param index
+     * @param color
+     */
+    public void set(int index, Color color) {
+        if (color == null)
+            throw new NullPointerException("color must not be null.");
+
+        set(index, color.getRGB());
+    }
+
+    /**
+     * Sets every entry shared with another palette to that palette's color, such as to switch a
+     * panel's palette between prepared day and night palettes. The cells of a panel are marked for
+     * repainting for all changed entries at once.
+     * @param palette
+     */
+    public void copyFrom(AsciiPalette palette) {
+        int size = Math.min(size(), palette.size());
+        boolean any = false;
+        Arrays.fill(changed, 0L);
+        for (int i = 0; i < size; i++) {
+            if (colors[i] == palette.colors[i])
+                continue;
+
+            colors[i] = palette.colors[i];
+            changed[i >>> 6] |= 1L << i;
+            any = true;
+        }
+
+        if (any && changeListener != null)
+            changeListener.colorsChanged(changed);
+    }
+
+    /**
+     * Checks that an index refers to an entry.
+     * @param index
+     */
+    void checkIndex(int index) {
+        if (index < 0 || index >= colors.length)
+            throw new IllegalArgumentException("index " + index + " must be within range [0," + colors.length + ")." );
+    }
+}
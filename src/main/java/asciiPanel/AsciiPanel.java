@@ -3,17 +3,26 @@ package asciiPanel;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.image.LookupOp;
-import java.awt.image.ShortLookupTable;
-import java.io.IOException;
-
-import javax.imageio.ImageIO;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 /**
  * This simulates a code page 437 ASCII terminal display.
+ * The cells and the rasterizing live in an AsciiRenderer; this class adds the cursor, default colors,
+ * validated write methods and Swing painting on top of it.
  * @author Trystan Spangler
  */
 public class AsciiPanel extends JPanel {
@@ -99,29 +108,48 @@ public class AsciiPanel extends JPanel {
      */
     public static Color brightWhite = new Color(255, 255, 255);
 
-    private Image offscreenBuffer;
-    private Graphics offscreenGraphics;
+    /**
+     * The fewest dirty cells a paint must have before it is split across the render executor.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = AsciiRenderer.DEFAULT_PARALLEL_THRESHOLD;
+
+    private AsciiRenderer renderer;
     private int widthInCharacters;
     private int heightInCharacters;
-    private int charWidth = 9;
-    private int charHeight = 16;
-    private String terminalFontFile = "cp437_9x16.png";
     private Color defaultBackgroundColor;
     private Color defaultForegroundColor;
     private int cursorX;
     private int cursorY;
-    private BufferedImage glyphSprite;
-    private BufferedImage[] glyphs;
-    private AsciiCharacterData[][] characters;
-    private AsciiCharacterData[][] previousCharacters;
-    private AsciiFont asciiFont;
+    private CellBuffer cells;
+    private CellBuffer backBuffer;
+    private final AtomicReference<CellBuffer> pendingFrame = new AtomicReference<CellBuffer>();
+    private final AtomicReference<CellBuffer> spareFrame = new AtomicReference<CellBuffer>();
+    private volatile boolean repaintScheduled;
+    private final transient Runnable repaintDirtyRegion = new Runnable() {
+        public void run() {
+            repaintScheduled = false;
+            repaintDirtyRegion();
+        }
+    };
+    private final transient Runnable repaintOnChange = new Runnable() {
+        public void run() {
+            scheduleRepaint();
+        }
+    };
+    private volatile transient RenderListener[] renderListeners = new RenderListener[0];
+    private final transient FrameStats frameStats = new FrameStats();
+    private transient RenderMetrics metrics;
+    private transient ObjectName metricsName;
+    private volatile transient FrameScheduler frameScheduler;
+    private AsciiPalette palette;
+    private final transient Rectangle damage = new Rectangle();
 
     /**
      * Gets the height, in pixels, of a character.
      * @return
      */
     public int getCharHeight() {
-        return charHeight;
+        return renderer.getCharHeight();
     }
 
     /**
@@ -129,7 +157,7 @@ public class AsciiPanel extends JPanel {
      * @return
      */
     public int getCharWidth() {
-        return charWidth;
+        return renderer.getCharWidth();
     }
 
     /**
@@ -219,6 +247,7 @@ public class AsciiPanel extends JPanel {
             throw new NullPointerException("defaultBackgroundColor must not be null.");
 
         this.defaultBackgroundColor = defaultBackgroundColor;
+        updateLayerFallback();
     }
 
     /**
@@ -238,6 +267,7 @@ public class AsciiPanel extends JPanel {
             throw new NullPointerException("defaultForegroundColor must not be null.");
 
         this.defaultForegroundColor = defaultForegroundColor;
+        updateLayerFallback();
     }
 
     /**
@@ -245,7 +275,7 @@ public class AsciiPanel extends JPanel {
      * @return
      */
     public AsciiFont getAsciiFont() {
-        return asciiFont;
+        return renderer.getAsciiFont();
     }
 
     /**
@@ -255,35 +285,241 @@ public class AsciiPanel extends JPanel {
      */
     public void setAsciiFont(AsciiFont font)
     {
-        if(this.asciiFont == font)
+        if(getAsciiFont() == font)
         {
             return;
         }
-        this.asciiFont = font;
+        renderer.setAsciiFont(font);
+
+        setPreferredSize(new Dimension(renderer.getPixelWidth(), renderer.getPixelHeight()));
+    }
+
+    /**
+     * Gets the integer zoom factor characters are drawn at.
+     * @return
+     */
+    public int getScale() {
+        return renderer.getScale();
+    }
+
+    /**
+     * Sets the integer zoom factor characters are drawn at, such as 2 or 3 on high resolution screens.
+     * Glyphs are drawn at the magnified size directly instead of scaling the whole image when painting.
+     * @param scale the zoom factor, 1 or greater
+     */
+    public void setScale(int scale) {
+        if (getScale() == scale)
+            return;
+
+        renderer.setScale(scale);
+
+        setPreferredSize(new Dimension(renderer.getPixelWidth(), renderer.getPixelHeight()));
+        repaint();
+    }
+
+    /**
+     * Gets the recorder that every paint appends a frame to, or null if nothing is recorded.
+     * @return
+     */
+    public SessionRecorder getSessionRecorder() {
+        return renderer.getSessionRecorder();
+    }
+
+    /**
+     * Sets the recorder that every paint with changed cells appends a frame to, starting with the
+     * screen as it is now. Call this from the event dispatch thread, which is where frames are recorded.
+     * @param sessionRecorder the recorder, the same size as this panel, or null to stop recording
+     */
+    public void setSessionRecorder(SessionRecorder sessionRecorder) {
+        renderer.setSessionRecorder(sessionRecorder);
+    }
+
+    /**
+     * Adds a transparent layer on top of the others. Once any layer exists, the visible characters are
+     * composited from the layers when painting, and characters written directly are overwritten
+     * wherever a layer changes. Cells no layer covers show a space in the default colors.
+     * Changes to a layer repaint the panel like any other write.
+     * @return the new layer
+     */
+    public CellLayer addLayer() {
+        return addLayer(renderer.getLayers().size());
+    }
+
+    /**
+     * Adds a transparent layer at a position in the stack, where 0 is the bottom.
+     * @param index
+     * @return the new layer
+     */
+    public CellLayer addLayer(int index) {
+        CellLayer layer = renderer.addLayer(index);
+        layer.changeListener = repaintOnChange;
+        return layer;
+    }
+
+    /**
+     * Removes a layer; what it covered is composited again on the next paint.
+     * @param layer
+     */
+    public void removeLayer(CellLayer layer) {
+        renderer.removeLayer(layer);
+        repaint();
+    }
+
+    /**
+     * Gets the layers from bottom to top.
+     * @return
+     */
+    public List<CellLayer> getLayers() {
+        return renderer.getLayers();
+    }
+
+    /**
+     * Gets the renderer that holds this panel's cells and rasterizes them.
+     * @return
+     */
+    public AsciiRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Gets the cache of colored glyph images used while painting.
+     * Its maximum size and hit/miss counters can be used to tune it for a palette.
+     * @return
+     */
+    public ColorizedGlyphCache getGlyphCache() {
+        return renderer.getGlyphCache();
+    }
+
+    /**
+     * Gets the way characters are rasterized into the offscreen buffer.
+     * @return
+     */
+    public RenderMode getRenderMode() {
+        return renderer.getRenderMode();
+    }
+
+    /**
+     * Sets the way characters are rasterized into the offscreen buffer.
+     * Every character is redrawn on the next paint.
+     * @param renderMode
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        renderer.setRenderMode(renderMode);
+    }
+
+    /**
+     * Gets the back buffer a single producer thread, such as a game-logic thread, can write to freely
+     * while the event dispatch thread paints. Nothing written to it is shown until <code>commit()</code>
+     * is called. The back buffer starts as a copy of the panel's current cells.
+     * <p>
+     * The panel's own write methods are still meant for the event dispatch thread only; a producer
+     * should write exclusively to the back buffer.
+     * @return
+     */
+    public synchronized CellBuffer getBackBuffer() {
+        if (backBuffer == null) {
+            backBuffer = new CellBuffer(widthInCharacters, heightInCharacters);
+            backBuffer.copyFrom(cells, 0, 0, 0, 0, widthInCharacters, heightInCharacters);
+            backBuffer.clearDirty();
+        }
+        return backBuffer;
+    }
 
-        this.charHeight = font.getHeight();
-        this.charWidth = font.getWidth();
-        this.terminalFontFile = font.getFontFilename();
+    /**
+     * Publishes the cells written to the back buffer since the last commit, so the next paint shows
+     * them as one consistent frame. Only the changed cells are handed over, through an atomic swap;
+     * neither this thread nor the event dispatch thread ever blocks. If the previous frame has not been
+     * painted yet, the new changes are merged into it. Call this from the producer thread.
+     */
+    public void commit() {
+        CellBuffer back = getBackBuffer();
+        if (!back.hasDirty())
+            return;
 
-        Dimension panelSize = new Dimension(charWidth * widthInCharacters, charHeight * heightInCharacters);
-        setPreferredSize(panelSize);
+        CellBuffer frame = pendingFrame.getAndSet(null);
+        if (frame == null)
+            frame = spareFrame.getAndSet(null);
+        if (frame == null)
+            frame = new CellBuffer(widthInCharacters, heightInCharacters);
 
-        glyphs = new BufferedImage[256];
+        frame.copyDirtyFrom(back);
+        Rectangle bounds = frame.getDirtyBounds();
+        back.clearDirty();
+        pendingFrame.set(frame);
 
-        offscreenBuffer = new BufferedImage(panelSize.width, panelSize.height, BufferedImage.TYPE_INT_RGB);
-        offscreenGraphics = offscreenBuffer.getGraphics();
+        repaintCells(bounds.x, bounds.y, bounds.width, bounds.height);
+    }
 
-        loadGlyphs();
+    /**
+     * Returns true if a committed frame is waiting to be painted.
+     * @return
+     */
+    public boolean hasPendingFrame() {
+        return pendingFrame.get() != null;
+    }
 
-        previousCharacters = new AsciiCharacterData[widthInCharacters][heightInCharacters];
+    /**
+     * Gets the executor used to rasterize bands of rows in parallel, or null if painting is single threaded.
+     * @return
+     */
+    public Executor getRenderExecutor() {
+        return renderer.getRenderExecutor();
     }
 
     /**
-     * Gets the AsciiCharacterDataValues which are currently written
+     * Sets the executor used to rasterize bands of rows in parallel. Only the <code>RASTER</code> render
+     * mode is parallelized, and only when at least <code>getParallelThreshold()</code> cells are dirty;
+     * smaller paints are rendered inline. The final blit always happens on the painting thread.
+     * @param renderExecutor the executor, or null to paint on a single thread
+     */
+    public void setRenderExecutor(Executor renderExecutor) {
+        renderer.setRenderExecutor(renderExecutor);
+    }
+
+    /**
+     * Turns parallel rasterization on the common <code>ForkJoinPool</code> on or off.
+     * @param parallel
+     */
+    public void setParallelRendering(boolean parallel) {
+        renderer.setParallelRendering(parallel);
+    }
+
+    /**
+     * Gets the fewest dirty cells a paint must have before it is rasterized in parallel.
+     * @return
+     */
+    public int getParallelThreshold() {
+        return renderer.getParallelThreshold();
+    }
+
+    /**
+     * Sets the fewest dirty cells a paint must have before it is rasterized in parallel.
+     * @param parallelThreshold
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        renderer.setParallelThreshold(parallelThreshold);
+    }
+
+    /**
+     * Gets the AsciiCharacterDataValues which are currently written.
+     * This is a column-major compatibility view over the panel's cell storage. It is created on the
+     * first call and kept up to date by every write; edits made to it in place after a call are picked
+     * up on the next paint or <code>withEachTile</code>. That compares every cell once, so call this
+     * again before each round of edits rather than keeping the array, and not at all when only reading
+     * cells: <code>getCells()</code> does that without the cost. Panels that never call this avoid
+     * keeping the view up to date.
      * @return
      */
     public AsciiCharacterData[][] getCharacters() {
-        return characters;
+        return cells.characterView();
+    }
+
+    /**
+     * Gets the primitive cell storage backing this panel.
+     * @return
+     */
+    public CellBuffer getCells() {
+        return cells;
     }
 
     /**
@@ -326,14 +562,19 @@ public class AsciiPanel extends JPanel {
         defaultBackgroundColor = black;
         defaultForegroundColor = white;
 
-        characters = new AsciiCharacterData[widthInCharacters][heightInCharacters];
-
         if(font == null) {
         	font = AsciiFont.CP437_9x16;
         }
-        setAsciiFont(font);
+        renderer = new AsciiRenderer(width, height, font);
+        cells = renderer.getCells();
+        updateLayerFallback();
+        setPreferredSize(new Dimension(renderer.getPixelWidth(), renderer.getPixelHeight()));
         clear();
     }
+
+    private void updateLayerFallback() {
+        renderer.setLayerFallback(' ', defaultForegroundColor.getRGB(), defaultBackgroundColor.getRGB());
+    }
     
     @Override
     public void update(Graphics g) {
@@ -345,83 +586,257 @@ public class AsciiPanel extends JPanel {
         if (g == null)
             throw new NullPointerException();
 
-        for (int x = 0; x < widthInCharacters; x++) {
-            for (int y = 0; y < heightInCharacters; y++) {
-                AsciiCharacterData previousCharacterData = previousCharacters[x][y];
-                AsciiCharacterData newCharacterData = characters[x][y];
+        RenderListener[] listeners = renderListeners;
+        if (listeners.length == 0) {
+            paintFrame(g);
+            return;
+        }
 
-                if (previousCharacterData != null
-                        && newCharacterData.backgroundColor == previousCharacterData.backgroundColor
-                        && newCharacterData.foregroundColor == previousCharacterData.foregroundColor
-                        && newCharacterData.character == previousCharacterData.character)
-                    continue;
+        ColorizedGlyphCache glyphCache = renderer.getGlyphCache();
+        long hits = glyphCache.getHits();
+        long misses = glyphCache.getMisses();
+        long allocated = ThreadAllocation.currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        long pixels = paintFrame(g);
+
+        frameStats.paintNanos = System.nanoTime() - start;
+        frameStats.bytesAllocated = allocated < 0 ? -1 : ThreadAllocation.currentThreadAllocatedBytes() - allocated;
+        frameStats.cellsScanned = renderer.getLastCellsScanned();
+        frameStats.cellsRedrawn = renderer.getLastCellsRedrawn();
+        frameStats.pixelsBlitted = pixels;
+        frameStats.glyphCacheHits = glyphCache.getHits() - hits;
+        frameStats.glyphCacheMisses = glyphCache.getMisses() - misses;
+        for (RenderListener listener : listeners)
+            listener.frameRendered(frameStats);
+    }
 
-                LookupOp op = setColors(newCharacterData.backgroundColor, newCharacterData.foregroundColor);
-                BufferedImage img = op.filter(glyphs[newCharacterData.character], null);
-                offscreenGraphics.drawImage(img, x * charWidth, y * charHeight, null);
-                
-                previousCharacters[x][y] = newCharacterData;
-            }
+    /**
+     * Renders the dirty cells and copies the clipped part of the image to the screen.
+     * @return the number of pixels copied
+     */
+    private long paintFrame(Graphics g) {
+        applyPendingFrame();
+        renderer.render();
+
+        BufferedImage offscreenBuffer = renderer.getImage();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            g.drawImage(offscreenBuffer,0,0,this);
+            return (long) offscreenBuffer.getWidth() * offscreenBuffer.getHeight();
+        }
+
+        int left = Math.max(clip.x, 0);
+        int top = Math.max(clip.y, 0);
+        int right = Math.min(clip.x + clip.width, offscreenBuffer.getWidth());
+        int bottom = Math.min(clip.y + clip.height, offscreenBuffer.getHeight());
+        if (left >= right || top >= bottom)
+            return 0;
+
+        g.drawImage(offscreenBuffer, left, top, right, bottom, left, top, right, bottom, this);
+        return (long) (right - left) * (bottom - top);
+    }
+
+    /**
+     * Adds a listener told what every paint cost. Nothing is measured while no listener is added.
+     * @param listener
+     */
+    public void addRenderListener(RenderListener listener) {
+        if (listener == null)
+            throw new NullPointerException("listener must not be null.");
+
+        synchronized (frameStats) {
+            RenderListener[] listeners = Arrays.copyOf(renderListeners, renderListeners.length + 1);
+            listeners[listeners.length - 1] = listener;
+            renderListeners = listeners;
+        }
+    }
+
+    /**
+     * Removes a listener added with <code>addRenderListener</code>.
+     * @param listener
+     */
+    public void removeRenderListener(RenderListener listener) {
+        synchronized (frameStats) {
+            List<RenderListener> listeners = new ArrayList<RenderListener>(Arrays.asList(renderListeners));
+            if (listeners.remove(listener))
+                renderListeners = listeners.toArray(new RenderListener[listeners.size()]);
         }
-        
-        g.drawImage(offscreenBuffer,0,0,this);
     }
 
-    private void loadGlyphs() {
-        try {
-            glyphSprite = ImageIO.read(AsciiPanel.class.getClassLoader().getResource(terminalFontFile));
-        } catch (IOException e) {
-            System.err.println("loadGlyphs(): " + e.getMessage());
+    /**
+     * Publishes this panel's paint metrics as an MBean on the platform MBean server, under
+     * <code>asciiPanel:type=RenderMetrics,name=</code> followed by the quoted name, and starts
+     * measuring every paint. Registering again under another name moves the MBean.
+     * @param name the name that tells this panel apart from others in the same process
+     * @return the metrics being published
+     * @throws JMException if the MBean server refuses the registration, for example because
+     *                     another panel already uses the name
+     */
+    public RenderMetrics registerMBean(String name) throws JMException {
+        if (name == null)
+            throw new NullPointerException("name must not be null.");
+
+        unregisterMBean();
+
+        RenderMetrics metrics = new RenderMetrics();
+        ObjectName objectName = new ObjectName("asciiPanel:type=RenderMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+        this.metrics = metrics;
+        this.metricsName = objectName;
+        addRenderListener(metrics);
+        return metrics;
+    }
+
+    /**
+     * Removes the MBean published by <code>registerMBean</code>, if any, and stops measuring paints
+     * for it.
+     * @throws JMException if the MBean server fails to remove it
+     */
+    public void unregisterMBean() throws JMException {
+        if (metrics == null)
+            return;
+
+        removeRenderListener(metrics);
+        ObjectName objectName = metricsName;
+        metrics = null;
+        metricsName = null;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName))
+            server.unregisterMBean(objectName);
+    }
+
+    /**
+     * Starts pacing paints with a FrameScheduler, replacing any scheduler already running. From then
+     * on writes no longer ask Swing for a repaint: changed cells are painted together by the next frame,
+     * at most <code>targetFps</code> times a second, or, with <code>FrameScheduler.MANUAL</code>, only
+     * when <code>requestFrame()</code> is called on the scheduler.
+     * @param targetFps the frames per second to paint at most, or <code>FrameScheduler.MANUAL</code>
+     * @return the scheduler
+     */
+    public FrameScheduler startFrameScheduler(int targetFps) {
+        return startFrameScheduler(new FrameScheduler(this, targetFps));
+    }
+
+    /**
+     * Starts pacing paints with a scheduler made for this panel, replacing any scheduler already running.
+     * @param scheduler
+     * @return the scheduler
+     */
+    FrameScheduler startFrameScheduler(FrameScheduler scheduler) {
+        stopFrameScheduler();
+        frameScheduler = scheduler;
+        scheduler.start();
+        return scheduler;
+    }
+
+    /**
+     * Gets the running frame scheduler, or null if writes repaint the panel on their own.
+     * @return
+     */
+    public FrameScheduler getFrameScheduler() {
+        return frameScheduler;
+    }
+
+    /**
+     * Stops the frame scheduler, if one is running, and goes back to repainting after writes.
+     * Anything written but not yet painted is repainted.
+     */
+    public void stopFrameScheduler() {
+        FrameScheduler scheduler = frameScheduler;
+        if (scheduler == null)
+            return;
+
+        scheduler.stop();
+        frameScheduler = null;
+
+        synchronized (damage) {
+            damage.setBounds(0, 0, 0, 0);
         }
+        repaint();
+    }
+
+    /**
+     * Copies the cells changed by the most recently committed frame, if any, into the panel's cells
+     * and hands the frame back to the producer for reuse.
+     */
+    private void applyPendingFrame() {
+        CellBuffer frame = pendingFrame.getAndSet(null);
+        if (frame == null)
+            return;
 
-        for (int i = 0; i < 256; i++) {
-            int sx = (i % 16) * charWidth;
-            int sy = (i / 16) * charHeight;
+        cells.copyDirtyFrom(frame);
+        frame.clearDirty();
+        spareFrame.set(frame);
+    }
 
-            glyphs[i] = new BufferedImage(charWidth, charHeight, BufferedImage.TYPE_INT_ARGB);
-            glyphs[i].getGraphics().drawImage(glyphSprite, 0, 0, charWidth, charHeight, sx, sy, sx + charWidth, sy + charHeight, null);
+    /**
+     * Asks Swing to repaint the dirty cells once the current burst of writes is done.
+     * Only one request is queued at a time; later writes grow the region it repaints.
+     */
+    private void scheduleRepaint() {
+        FrameScheduler scheduler = frameScheduler;
+        if (scheduler != null) {
+            scheduler.markDirty();
+            return;
         }
+
+        if (repaintScheduled)
+            return;
+
+        repaintScheduled = true;
+        SwingUtilities.invokeLater(repaintDirtyRegion);
     }
-        
-    /**
-     * Create a <code>LookupOp</code> object (lookup table) mapping the original 
-     * pixels to the background and foreground colors, respectively. 
-     * @param bgColor the background color
-     * @param fgColor the foreground color
-     * @return the <code>LookupOp</code> object (lookup table)
-     */
-    private LookupOp setColors(Color bgColor, Color fgColor) {
-        short[] a = new short[256];
-        short[] r = new short[256];
-        short[] g = new short[256];
-        short[] b = new short[256];
-
-        byte bga = (byte) (bgColor.getAlpha());
-        byte bgr = (byte) (bgColor.getRed());
-        byte bgg = (byte) (bgColor.getGreen());
-        byte bgb = (byte) (bgColor.getBlue());
-
-        byte fga = (byte) (fgColor.getAlpha());
-        byte fgr = (byte) (fgColor.getRed());
-        byte fgg = (byte) (fgColor.getGreen());
-        byte fgb = (byte) (fgColor.getBlue());
-
-        for (int i = 0; i < 256; i++) {
-            if (i == 0) {
-                a[i] = bga;
-                r[i] = bgr;
-                g[i] = bgg;
-                b[i] = bgb;
-            } else {
-                a[i] = fga;
-                r[i] = fgr;
-                g[i] = fgg;
-                b[i] = fgb;
+
+    /**
+     * Repaints a section of cells whose pixels changed, such as a scrolled one, whether or not its
+     * cells are dirty. With a frame scheduler the section is painted with the next frame instead.
+     */
+    private void repaintCells(int x, int y, int width, int height) {
+        FrameScheduler scheduler = frameScheduler;
+        if (scheduler == null) {
+            repaint(x * getCharWidth(), y * getCharHeight(), width * getCharWidth(), height * getCharHeight());
+            return;
+        }
+
+        synchronized (damage) {
+            if (damage.isEmpty())
+                damage.setBounds(x, y, width, height);
+            else
+                damage.add(new Rectangle(x, y, width, height));
+        }
+        scheduler.markDirty();
+    }
+
+    /**
+     * Paints the cells changed since the last frame right away. Called by the frame scheduler on the
+     * event dispatch thread.
+     */
+    void paintScheduledFrame() {
+        applyPendingFrame();
+        renderer.compositeLayers();
+
+        Rectangle bounds = cells.getDirtyBounds();
+        synchronized (damage) {
+            if (!damage.isEmpty()) {
+                if (bounds == null)
+                    bounds = new Rectangle(damage);
+                else
+                    bounds.add(damage);
+                damage.setBounds(0, 0, 0, 0);
             }
         }
 
-        short[][] table = {r, g, b, a};
-        return new LookupOp(new ShortLookupTable(0, table), null);
+        if (bounds != null)
+            paintImmediately(bounds.x * getCharWidth(), bounds.y * getCharHeight(), bounds.width * getCharWidth(), bounds.height * getCharHeight());
+    }
+
+    private void repaintDirtyRegion() {
+        renderer.compositeLayers();
+
+        Rectangle bounds = cells.getDirtyBounds();
+        if (bounds != null)
+            repaint(bounds.x * getCharWidth(), bounds.y * getCharHeight(), bounds.width * getCharWidth(), bounds.height * getCharHeight());
     }
 
     /**
@@ -452,6 +867,17 @@ public class AsciiPanel extends JPanel {
         return clear(character, 0, 0, widthInCharacters, heightInCharacters, foreground, background);
     }
 
+    /**
+     * Clear the entire screen with the specified character and packed ARGB foreground and background colors.
+     * @param character  the character to write
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel clear(char character, int foreground, int background) {
+        return clear(character, 0, 0, widthInCharacters, heightInCharacters, foreground, background);
+    }
+
     /**
      * Clear the section of the screen with the specified character and whatever the default foreground and background colors are.
      * The cursor position will not be modified.
@@ -463,7 +889,7 @@ public class AsciiPanel extends JPanel {
      * @return this for convenient chaining of method calls
      */
     public AsciiPanel clear(char character, int x, int y, int width, int height) {
-        return clear(new AsciiCharacterData(character, defaultForegroundColor, defaultBackgroundColor), x, y, width, height);
+        return clear(character, x, y, width, height, defaultForegroundColor.getRGB(), defaultBackgroundColor.getRGB());
     }
 
     /**
@@ -478,7 +904,37 @@ public class AsciiPanel extends JPanel {
      * @return this for convenient chaining of method calls
      */
     public AsciiPanel clear(char character, int x, int y, int width, int height, Color foreground, Color background) {
-        return clear(new AsciiCharacterData(character, foreground, background), x, y, width, height);
+        if (foreground == null)
+            foreground = defaultForegroundColor;
+
+        if (background == null)
+            background = defaultBackgroundColor;
+
+        return clear(character, x, y, width, height, foreground.getRGB(), background.getRGB());
+    }
+
+    /**
+     * Clear the section of the screen with the specified character and packed ARGB foreground and background colors.
+     * The cursor position will not be modified.
+     * @param character  the character to write
+     * @param x          the distance from the left to begin writing from
+     * @param y          the distance from the top to begin writing from
+     * @param width      the height of the section to clear
+     * @param height     the width of the section to clear
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel clear(char character, int x, int y, int width, int height, int foreground, int background) {
+        if (character < 0 || character >= renderer.getGlyphCount())
+            throw new IllegalArgumentException("character " + character + " must be within range [0," + renderer.getGlyphCount() + "]." );
+
+        checkSection(x, y, width, height);
+
+        cells.fill(x, y, width, height, character, foreground, background);
+        scheduleRepaint();
+
+        return this;
     }
 
     /**
@@ -491,9 +947,117 @@ public class AsciiPanel extends JPanel {
      * @return this for convenient chaining of method calls
      */
     public AsciiPanel clear(AsciiCharacterData characterData, int x, int y, int width, int height) {
-        if (characterData.character < 0 || characterData.character >= glyphs.length)
-            throw new IllegalArgumentException("character " + characterData.character + " must be within range [0," + glyphs.length + "]." );
+        if (characterData.foregroundColor == null) {
+            characterData.foregroundColor = defaultForegroundColor;
+        }
+
+        if (characterData.backgroundColor == null) {
+            characterData.backgroundColor = defaultBackgroundColor;
+        }
+
+        return clear(characterData.character, x, y, width, height, characterData.foregroundColor.getRGB(), characterData.backgroundColor.getRGB());
+    }
+
+    /**
+     * Write a section of characters and packed ARGB colors from arrays laid out row by row.
+     * The section is validated once, copied one row at a time and marked dirty in a single step.
+     * The cursor position will not be modified.
+     * @param characters  the characters to write
+     * @param foregrounds the packed ARGB foreground colors
+     * @param backgrounds the packed ARGB background colors
+     * @param offset      the index in the arrays of the section's top left cell
+     * @param scansize    the distance in the arrays from one row of the section to the next
+     * @param x           the distance from the left to begin writing from
+     * @param y           the distance from the top to begin writing from
+     * @param width       the width of the section to write
+     * @param height      the height of the section to write
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel writeBlock(char[] characters, int[] foregrounds, int[] backgrounds, int offset, int scansize, int x, int y, int width, int height) {
+        if (characters == null)
+            throw new NullPointerException("characters must not be null." );
+
+        if (foregrounds == null)
+            throw new NullPointerException("foregrounds must not be null." );
+
+        if (backgrounds == null)
+            throw new NullPointerException("backgrounds must not be null." );
+
+        checkSection(x, y, width, height);
+
+        if (scansize < width)
+            throw new IllegalArgumentException("scansize " + scansize + " must be at least width " + width + "." );
+
+        int last = offset + (height - 1) * scansize + width;
+        if (offset < 0 || last > characters.length || last > foregrounds.length || last > backgrounds.length)
+            throw new IllegalArgumentException("offset " + offset + " and scansize " + scansize + " reach past the end of the arrays." );
+
+        for (int row = 0; row < height; row++) {
+            int from = offset + row * scansize;
+            for (int i = from; i < from + width; i++) {
+                if (characters[i] >= renderer.getGlyphCount())
+                    throw new IllegalArgumentException("character " + characters[i] + " must be within range [0," + renderer.getGlyphCount() + "]." );
+            }
+        }
+
+        cells.copyFrom(characters, foregrounds, backgrounds, offset, scansize, x, y, width, height);
+        scheduleRepaint();
+        return this;
+    }
+
+    /**
+     * Write a section of another cell buffer, such as one filled on another thread or kept off screen.
+     * The section is validated once, copied one row at a time and marked dirty in a single step.
+     * The cursor position will not be modified.
+     * @param source   the buffer to copy from
+     * @param sourceX  the distance from the left to copy from
+     * @param sourceY  the distance from the top to copy from
+     * @param x        the distance from the left to begin writing from
+     * @param y        the distance from the top to begin writing from
+     * @param width    the width of the section to write
+     * @param height   the height of the section to write
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel writeBlock(CellBuffer source, int sourceX, int sourceY, int x, int y, int width, int height) {
+        if (source == null)
+            throw new NullPointerException("source must not be null." );
+
+        if (source == cells)
+            throw new IllegalArgumentException("source must not be this panel's own cells." );
+
+        checkSection(x, y, width, height);
+
+        if (sourceX < 0 || sourceY < 0 || sourceX + width > source.getWidth() || sourceY + height > source.getHeight())
+            throw new IllegalArgumentException("source section " + sourceX + "," + sourceY + " " + width + "x" + height
+                    + " must be within the source's " + source.getWidth() + "x" + source.getHeight() + " cells." );
+
+        cells.copyFrom(source, sourceX, sourceY, x, y, width, height);
+        scheduleRepaint();
+        return this;
+    }
+
+    /**
+     * Scroll a section of the screen by an offset, such as a message log by one line or a map by the
+     * player's step, filling the exposed strip with spaces in the default colors.
+     * The characters and the already drawn pixels are shifted in bulk, so only the exposed strip is
+     * drawn again on the next paint. The cursor position will not be modified.
+     * @param x      the distance from the left of the section
+     * @param y      the distance from the top of the section
+     * @param width  the width of the section
+     * @param height the height of the section
+     * @param dx     how far to move the contents right, negative to move them left
+     * @param dy     how far to move the contents down, negative to move them up
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel scroll(int x, int y, int width, int height, int dx, int dy) {
+        checkSection(x, y, width, height);
+
+        renderer.scroll(x, y, width, height, dx, dy, ' ', defaultForegroundColor.getRGB(), defaultBackgroundColor.getRGB());
+        repaintCells(x, y, width, height);
+        return this;
+    }
 
+    private void checkSection(int x, int y, int width, int height) {
         if (x < 0 || x >= widthInCharacters)
             throw new IllegalArgumentException("x " + x + " must be within range [0," + widthInCharacters + ")" );
 
@@ -511,18 +1075,6 @@ public class AsciiPanel extends JPanel {
 
         if (y + height > heightInCharacters)
             throw new IllegalArgumentException("y + height " + (y + height) + " must be less than " + (heightInCharacters + 1) + "." );
-
-        int originalCursorX = cursorX;
-        int originalCursorY = cursorY;
-        for (int xo = x; xo < x + width; xo++) {
-            for (int yo = y; yo < y + height; yo++) {
-                write(characterData, xo, yo);
-            }
-        }
-        cursorX = originalCursorX;
-        cursorY = originalCursorY;
-
-        return this;
     }
 
     /**
@@ -594,20 +1146,97 @@ public class AsciiPanel extends JPanel {
      * @return this for convenient chaining of method calls
      */
     public AsciiPanel write(char character, int x, int y, Color foreground, Color background) {
-        return write(new AsciiCharacterData(character, foreground, background), x, y);
+        if (foreground == null)
+            foreground = defaultForegroundColor;
+
+        if (background == null)
+            background = defaultBackgroundColor;
+
+        return write(character, x, y, foreground.getRGB(), background.getRGB());
     }
 
     /**
-     * Write an AsciiCharacterData to the specified position.
+     * Write a character to the specified position with the specified packed ARGB foreground color and
+     * whatever the default background color is.
+     * This updates the cursor's position but not the default foreground color.
+     * @param character  the character to write
+     * @param x          the distance from the left to begin writing from
+     * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel write(char character, int x, int y, int foreground) {
+        return write(character, x, y, foreground, defaultBackgroundColor.getRGB());
+    }
+
+    /**
+     * Write a character to the specified position with the specified packed ARGB foreground and
+     * background colors. Nothing is allocated, so colors computed per cell, such as lighting or fog,
+     * can be written every frame without creating a <code>Color</code> for each.
      * This updates the cursor's position but not the default foreground or background colors.
-     * @param characterData  the AsciiCharacterData to write
+     * @param character  the character to write
      * @param x          the distance from the left to begin writing from
      * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
      * @return this for convenient chaining of method calls
      */
-    public AsciiPanel write(AsciiCharacterData characterData, int x, int y) {
-        if (characterData.character < 0 || characterData.character >= glyphs.length)
-            throw new IllegalArgumentException("character " + characterData.character + " must be within range [0," + glyphs.length + "]." );
+    public AsciiPanel write(char character, int x, int y, int foreground, int background) {
+        if (character < 0 || character >= renderer.getGlyphCount())
+            throw new IllegalArgumentException("character " + character + " must be within range [0," + renderer.getGlyphCount() + "]." );
+
+        if (x < 0 || x >= widthInCharacters)
+            throw new IllegalArgumentException("x " + x + " must be within range [0," + widthInCharacters + ")" );
+
+        if (y < 0 || y >= heightInCharacters)
+            throw new IllegalArgumentException("y " + y + " must be within range [0," + heightInCharacters + ")" );
+
+        cells.set(x, y, character, foreground, background);
+        scheduleRepaint();
+        cursorX = x + 1;
+        cursorY = y;
+        return this;
+    }
+
+    /**
+     * Gets the palette that <code>writeIndexed</code> takes its colors from, creating it with
+     * <code>AsciiPalette.MAXIMUM_SIZE</code> entries the first time. Changing an entry repaints every
+     * cell written with that index in the entry's new color; the cells are not rewritten, only
+     * marked dirty, and their colors are looked up from the palette when they are drawn.
+     * @return
+     */
+    public AsciiPalette getPalette() {
+        if (palette == null) {
+            palette = new AsciiPalette(AsciiPalette.MAXIMUM_SIZE);
+            palette.changeListener = new AsciiPalette.ChangeListener() {
+                public void colorsChanged(long[] changed) {
+                    paletteColorsChanged(changed);
+                }
+            };
+        }
+        return palette;
+    }
+
+    private void paletteColorsChanged(long[] changed) {
+        if (cells.indexedColors != null && cells.indexedColors.paletteChanged(cells, changed))
+            scheduleRepaint();
+    }
+
+    /**
+     * Write a character to the specified position with colors taken from the palette. The cell keeps
+     * following the palette: when either entry changes, the cell is recolored. Writing the cell in any
+     * other way stops that, even with the entry's current colors.
+     * This updates the cursor's position but not the default foreground or background colors.
+     * @param character       the character to write
+     * @param x               the distance from the left to begin writing from
+     * @param y               the distance from the top to begin writing from
+     * @param foregroundIndex the palette index of the foreground color
+     * @param backgroundIndex the palette index of the background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel writeIndexed(char character, int x, int y, int foregroundIndex, int backgroundIndex) {
+        if (character < 0 || character >= renderer.getGlyphCount())
+            throw new IllegalArgumentException("character " + character + " must be within range [0," + renderer.getGlyphCount() + "]." );
 
         if (x < 0 || x >= widthInCharacters)
             throw new IllegalArgumentException("x " + x + " must be within range [0," + widthInCharacters + ")" );
@@ -615,6 +1244,53 @@ public class AsciiPanel extends JPanel {
         if (y < 0 || y >= heightInCharacters)
             throw new IllegalArgumentException("y " + y + " must be within range [0," + heightInCharacters + ")" );
 
+        AsciiPalette palette = getPalette();
+        palette.checkIndex(foregroundIndex);
+        palette.checkIndex(backgroundIndex);
+
+        if (cells.indexedColors == null)
+            cells.indexedColors = new IndexedColors(widthInCharacters, heightInCharacters, palette.colors);
+
+        cells.set(x, y, character, palette.get(foregroundIndex), palette.get(backgroundIndex));
+        cells.indexedColors.set(x, y, foregroundIndex, backgroundIndex);
+        scheduleRepaint();
+        cursorX = x + 1;
+        cursorY = y;
+        return this;
+    }
+
+    /**
+     * Write a string to the specified position with colors taken from the palette, as
+     * <code>writeIndexed(char, int, int, int, int)</code> does for each character.
+     * This updates the cursor's position but not the default foreground or background colors.
+     * @param string          the string to write
+     * @param x               the distance from the left to begin writing from
+     * @param y               the distance from the top to begin writing from
+     * @param foregroundIndex the palette index of the foreground color
+     * @param backgroundIndex the palette index of the background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel writeIndexed(String string, int x, int y, int foregroundIndex, int backgroundIndex) {
+        if (string == null)
+            throw new NullPointerException("string must not be null." );
+
+        if (x + string.length() > widthInCharacters)
+            throw new IllegalArgumentException("x + string.length() " + (x + string.length()) + " must be less than " + widthInCharacters + "." );
+
+        for (int i = 0; i < string.length(); i++)
+            writeIndexed(string.charAt(i), x + i, y, foregroundIndex, backgroundIndex);
+        return this;
+    }
+
+    /**
+     * Write an AsciiCharacterData to the specified position.
+     * This updates the cursor's position but not the default foreground or background colors.
+     * @param characterData  the AsciiCharacterData to write
+     * @param x          the distance from the left to begin writing from
+     * @param y          the distance from the top to begin writing from
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel write(AsciiCharacterData characterData, int x, int y) {
         if (characterData.foregroundColor == null) {
             characterData.foregroundColor = defaultForegroundColor;
         }
@@ -623,10 +1299,7 @@ public class AsciiPanel extends JPanel {
             characterData.backgroundColor = defaultBackgroundColor;
         }
 
-        characters[x][y] = characterData;
-        cursorX = x + 1;
-        cursorY = y;
-        return this;
+        return write(characterData.character, x, y, characterData.foregroundColor, characterData.backgroundColor);
     }
 
     /**
@@ -740,11 +1413,62 @@ public class AsciiPanel extends JPanel {
      * @return this for convenient chaining of method calls
      */
     public AsciiPanel write(String string, int x, int y, Color foreground, Color background) {
-        if (string == null)
-            throw new NullPointerException("string must not be null." );
-        
-        if (x + string.length() > widthInCharacters)
-            throw new IllegalArgumentException("x + string.length() " + (x + string.length()) + " must be less than " + widthInCharacters + "." );
+        if (foreground == null)
+            foreground = defaultForegroundColor;
+
+        if (background == null)
+            background = defaultBackgroundColor;
+
+        return write(string, x, y, foreground.getRGB(), background.getRGB());
+    }
+
+    /**
+     * Write a string to the specified position with the specified packed ARGB foreground color and
+     * whatever the default background color is.
+     * This updates the cursor's position but not the default foreground color.
+     * @param string     the string to write
+     * @param x          the distance from the left to begin writing from
+     * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel write(String string, int x, int y, int foreground) {
+        return write(string, x, y, foreground, defaultBackgroundColor.getRGB());
+    }
+
+    /**
+     * Write a string to the specified position with the specified packed ARGB foreground and background colors.
+     * This updates the cursor's position but not the default foreground or background colors.
+     * @param string     the string to write
+     * @param x          the distance from the left to begin writing from
+     * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel write(String string, int x, int y, int foreground, int background) {
+        return write((CharSequence) string, x, y, foreground, background);
+    }
+
+    /**
+     * Write a sequence of characters, such as a reused StringBuilder, to the specified position with the
+     * specified packed ARGB foreground and background colors. Everything is checked before any cell is
+     * written, then the characters are stored directly and marked dirty as a single span.
+     * This updates the cursor's position but not the default foreground or background colors.
+     * @param text       the characters to write
+     * @param x          the distance from the left to begin writing from
+     * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel write(CharSequence text, int x, int y, int foreground, int background) {
+        if (text == null)
+            throw new NullPointerException("text must not be null." );
+
+        int length = text.length();
+        if (x + length > widthInCharacters)
+            throw new IllegalArgumentException("x + text.length() " + (x + length) + " must be less than " + widthInCharacters + "." );
 
         if (x < 0 || x >= widthInCharacters)
             throw new IllegalArgumentException("x " + x + " must be within range [0," + widthInCharacters + ")." );
@@ -752,18 +1476,169 @@ public class AsciiPanel extends JPanel {
         if (y < 0 || y >= heightInCharacters)
             throw new IllegalArgumentException("y " + y + " must be within range [0," + heightInCharacters + ")." );
 
-        if (foreground == null)
-            foreground = defaultForegroundColor;
+        checkCharacters(text, 0, length);
 
-        if (background == null)
-            background = defaultBackgroundColor;
+        cells.write(x, y, text, 0, length, foreground, background);
+        scheduleRepaint();
+        cursorX = x + length;
+        cursorY = y;
+        return this;
+    }
 
-        for (int i = 0; i < string.length(); i++) {
-            write(string.charAt(i), x + i, y, foreground, background);
+    /**
+     * Write part of a character array to the specified position with the specified packed ARGB foreground
+     * and background colors, such as a line of a reused text buffer. Everything is checked before any
+     * cell is written, then the characters are stored directly and marked dirty as a single span.
+     * This updates the cursor's position but not the default foreground or background colors.
+     * @param chars      the array holding the characters to write
+     * @param offset     the index in <code>chars</code> of the first character to write
+     * @param length     the number of characters to write
+     * @param x          the distance from the left to begin writing from
+     * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel write(char[] chars, int offset, int length, int x, int y, int foreground, int background) {
+        if (chars == null)
+            throw new NullPointerException("chars must not be null." );
+
+        if (offset < 0 || length < 0 || offset + length > chars.length)
+            throw new IllegalArgumentException("offset " + offset + " and length " + length + " must lie within the " + chars.length + " chars." );
+
+        if (x + length > widthInCharacters)
+            throw new IllegalArgumentException("x + length " + (x + length) + " must be less than " + widthInCharacters + "." );
+
+        if (x < 0 || x >= widthInCharacters)
+            throw new IllegalArgumentException("x " + x + " must be within range [0," + widthInCharacters + ")." );
+
+        if (y < 0 || y >= heightInCharacters)
+            throw new IllegalArgumentException("y " + y + " must be within range [0," + heightInCharacters + ")." );
+
+        for (int i = offset; i < offset + length; i++) {
+            if (chars[i] >= renderer.getGlyphCount())
+                throw new IllegalArgumentException("character " + chars[i] + " must be within range [0," + renderer.getGlyphCount() + "]." );
         }
+
+        cells.write(x, y, chars, offset, offset + length, foreground, background);
+        scheduleRepaint();
+        cursorX = x + length;
+        cursorY = y;
         return this;
     }
 
+    /**
+     * Write a sequence of characters on one row with the specified packed ARGB foreground and background
+     * colors, dropping whatever falls outside the panel instead of failing. The position may be partly or
+     * entirely off the panel, which suits labels that follow something across the screen.
+     * The cursor position will not be modified.
+     * @param text       the characters to write
+     * @param x          the distance from the left to begin writing from, which may be negative
+     * @param y          the distance from the top
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel writeClipped(CharSequence text, int x, int y, int foreground, int background) {
+        if (text == null)
+            throw new NullPointerException("text must not be null." );
+
+        if (y < 0 || y >= heightInCharacters)
+            return this;
+
+        int start = Math.max(0, -x);
+        int end = Math.min(text.length(), widthInCharacters - x);
+        if (start >= end)
+            return this;
+
+        checkCharacters(text, start, end);
+
+        cells.write(x + start, y, text, start, end, foreground, background);
+        scheduleRepaint();
+        return this;
+    }
+
+    /**
+     * Write a sequence of characters into a section of the panel with the specified packed ARGB foreground
+     * and background colors, wrapping lines at spaces. A word longer than the section is broken where it
+     * reaches the edge, a <code>'\n'</code> starts a new line, and spaces where a line wraps are dropped.
+     * Lines that do not fit in the section are dropped; cells a line does not reach are left as they are.
+     * No intermediate strings are made: each line is written straight from <code>text</code>.
+     * The cursor position will not be modified.
+     * @param text       the characters to write
+     * @param x          the distance from the left of the section
+     * @param y          the distance from the top of the section
+     * @param width      the width of the section
+     * @param height     the height of the section
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return the number of rows written, counting empty lines
+     */
+    public int writeWrapped(CharSequence text, int x, int y, int width, int height, int foreground, int background) {
+        if (text == null)
+            throw new NullPointerException("text must not be null." );
+
+        checkSection(x, y, width, height);
+        checkCharacters(text, 0, text.length());
+
+        int length = text.length();
+        int start = 0;
+        int row = 0;
+        boolean written = false;
+        while (start < length && row < height) {
+            int limit = Math.min(length, start + width);
+            int end = start;
+            while (end < limit && text.charAt(end) != '\n')
+                end++;
+
+            int next;
+            if (end < limit || end == length) {
+                // the line ends with a newline or the text; it fits as it is
+                next = end < length ? end + 1 : end;
+            } else if (text.charAt(end) == ' ' || text.charAt(end) == '\n') {
+                next = end + 1;
+            } else {
+                int space = end - 1;
+                while (space > start && text.charAt(space) != ' ')
+                    space--;
+
+                if (space > start)
+                    end = space;
+                next = end;
+            }
+
+            int trimmed = end;
+            while (trimmed > start && text.charAt(trimmed - 1) == ' ')
+                trimmed--;
+
+            if (trimmed > start) {
+                cells.write(x, y + row, text, start, trimmed, foreground, background);
+                written = true;
+            }
+            row++;
+
+            boolean brokenByNewline = next > 0 && text.charAt(next - 1) == '\n';
+            start = next;
+            if (!brokenByNewline) {
+                while (start < length && text.charAt(start) == ' ')
+                    start++;
+            }
+        }
+
+        if (written)
+            scheduleRepaint();
+        return row;
+    }
+
+    private void checkCharacters(CharSequence text, int start, int end) {
+        int glyphCount = renderer.getGlyphCount();
+        for (int i = start; i < end; i++) {
+            char character = text.charAt(i);
+            if (character >= glyphCount)
+                throw new IllegalArgumentException("character " + character + " must be within range [0," + glyphCount + "]." );
+        }
+    }
+
     /**
      * Write a string to the center of the panel at the specified y position.
      * This updates the cursor's position.
@@ -819,6 +1694,39 @@ public class AsciiPanel extends JPanel {
      * @return this for convenient chaining of method calls
      */
     public AsciiPanel writeCenter(String string, int y, Color foreground, Color background) {
+        if (foreground == null)
+            foreground = defaultForegroundColor;
+
+        if (background == null)
+            background = defaultBackgroundColor;
+
+        return writeCenter(string, y, foreground.getRGB(), background.getRGB());
+    }
+
+    /**
+     * Write a string to the center of the panel at the specified y position with the specified packed
+     * ARGB foreground color and whatever the default background color is.
+     * This updates the cursor's position but not the default foreground color.
+     * @param string     the string to write
+     * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel writeCenter(String string, int y, int foreground) {
+        return writeCenter(string, y, foreground, defaultBackgroundColor.getRGB());
+    }
+
+    /**
+     * Write a string to the center of the panel at the specified y position with the specified packed
+     * ARGB foreground and background colors.
+     * This updates the cursor's position but not the default foreground or background colors.
+     * @param string     the string to write
+     * @param y          the distance from the top to begin writing from
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return this for convenient chaining of method calls
+     */
+    public AsciiPanel writeCenter(String string, int y, int foreground, int background) {
         if (string == null)
             throw new NullPointerException("string must not be null." );
 
@@ -826,27 +1734,35 @@ public class AsciiPanel extends JPanel {
             throw new IllegalArgumentException("string.length() " + string.length() + " must be less than " + widthInCharacters + "." );
 
         int x = (widthInCharacters - string.length()) / 2;
-        
+
         if (y < 0 || y >= heightInCharacters)
             throw new IllegalArgumentException("y " + y + " must be within range [0," + heightInCharacters + ")." );
 
-        if (foreground == null)
-            foreground = defaultForegroundColor;
-
-        if (background == null)
-            background = defaultBackgroundColor;
-
-        for (int i = 0; i < string.length(); i++) {
-            write(string.charAt(i), x + i, y, foreground, background);
-        }
-        return this;
+        return write(string, x, y, foreground, background);
     }
     
+    /**
+     * Passes every tile to the transformer, column by column.
+     * @param transformer
+     */
     public void withEachTile(TileTransformer transformer){
         withEachTile(0, 0, widthInCharacters, heightInCharacters, transformer);
     }
     
+    /**
+     * Passes every tile of a section to the transformer, column by column. Tiles outside the panel are skipped.
+     * Each tile is passed as its own AsciiCharacterData; changes made to it are stored once the transformer returns.
+     * @param left
+     * @param top
+     * @param width
+     * @param height
+     * @param transformer
+     */
     public void withEachTile(int left, int top, int width, int height, TileTransformer transformer){
+        cells.syncView();
+
+        Color foregroundColor = null;
+        Color backgroundColor = null;
         for (int x0 = 0; x0 < width; x0++) {
             for (int y0 = 0; y0 < height; y0++) {
                 int x = left + x0;
@@ -855,8 +1771,101 @@ public class AsciiPanel extends JPanel {
                 if (x < 0 || y < 0 || x >= widthInCharacters || y >= heightInCharacters)
                     continue;
 
-                transformer.transformTile(x, y, characters[x][y]);
+                char character = cells.getCharacter(x, y);
+                int foreground = cells.getForeground(x, y);
+                int background = cells.getBackground(x, y);
+                // colors are immutable, so neighbouring tiles of the same color share one
+                if (foregroundColor == null || foregroundColor.getRGB() != foreground)
+                    foregroundColor = new Color(foreground, true);
+                if (backgroundColor == null || backgroundColor.getRGB() != background)
+                    backgroundColor = new Color(background, true);
+
+                AsciiCharacterData data = new AsciiCharacterData(character, foregroundColor, backgroundColor);
+                transformer.transformTile(x, y, data);
+
+                int newForeground = data.foregroundColor == null ? foreground : data.foregroundColor.getRGB();
+                int newBackground = data.backgroundColor == null ? background : data.backgroundColor.getRGB();
+                if (data.character != character || newForeground != foreground || newBackground != background)
+                    cells.set(x, y, data.character, newForeground, newBackground);
             }
         }
+
+        if (cells.hasDirty())
+            scheduleRepaint();
+    }
+
+    /**
+     * Passes every cell to the transformer, row by row, as primitive values.
+     * @param transformer
+     */
+    public void withEachCell(CellTransformer transformer) {
+        withEachCell(0, 0, widthInCharacters, heightInCharacters, transformer);
+    }
+
+    /**
+     * Passes every cell of a section to the transformer, row by row, as primitive values. Cells
+     * outside the panel are skipped. Changed cells are marked dirty and repainted.
+     * @param left
+     * @param top
+     * @param width
+     * @param height
+     * @param transformer
+     */
+    public void withEachCell(int left, int top, int width, int height, CellTransformer transformer) {
+        if (transformer == null)
+            throw new NullPointerException("transformer must not be null.");
+
+        int x = Math.max(left, 0);
+        int y = Math.max(top, 0);
+        int right = Math.min(left + width, widthInCharacters);
+        int bottom = Math.min(top + height, heightInCharacters);
+        if (x >= right || y >= bottom)
+            return;
+
+        cells.syncView();
+        cells.transform(x, y, right - x, bottom - y, transformer);
+
+        if (cells.hasDirty())
+            scheduleRepaint();
+    }
+
+    /**
+     * Passes every cell to the transformer from the threads of the common fork/join pool.
+     * @param transformer a transformer that only depends on the cell it is given
+     */
+    public void withEachCellParallel(CellTransformer transformer) {
+        withEachCellParallel(0, 0, widthInCharacters, heightInCharacters, transformer, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Passes every cell of a section to the transformer like <code>withEachCell</code>, but with the
+     * rows split into bands that are transformed concurrently on a fork/join pool. Returns once every
+     * cell is done. Meant for per-cell effects over large panels, such as lighting or fog of war.
+     * @param left
+     * @param top
+     * @param width
+     * @param height
+     * @param transformer a transformer that only depends on the cell it is given
+     * @param pool        the pool to run the bands on
+     */
+    public void withEachCellParallel(int left, int top, int width, int height, CellTransformer transformer, ForkJoinPool pool) {
+        if (transformer == null)
+            throw new NullPointerException("transformer must not be null.");
+
+        if (pool == null)
+            throw new NullPointerException("pool must not be null.");
+
+        int x = Math.max(left, 0);
+        int y = Math.max(top, 0);
+        int right = Math.min(left + width, widthInCharacters);
+        int bottom = Math.min(top + height, heightInCharacters);
+        if (x >= right || y >= bottom)
+            return;
+
+        cells.syncView();
+        cells.transformParallel(x, y, right - x, bottom - y, transformer, pool);
+
+        if (cells.hasDirty())
+            scheduleRepaint();
     }
 }
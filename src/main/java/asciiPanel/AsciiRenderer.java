@@ -0,0 +1,842 @@
+package asciiPanel;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.LookupOp;
+import java.awt.image.ShortLookupTable;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Turns a grid of cells into pixels without any Swing component or display, so it works under
+ * <code>java.awt.headless=true</code>. It owns the cell model and the glyphs of one AsciiFont.
+ * <p>
+ * <code>render()</code> redraws only the dirty cells into the renderer's own image, which is what
+ * AsciiPanel paints from. <code>render(BufferedImage)</code> and <code>render(int[], int, int)</code>
+ * draw every cell into a caller-supplied image or pixel array, which suits generating many
+ * independent frames such as thumbnails.
+ * <p>
+ * This class is not thread safe, apart from the optional parallel rasterization it does itself.
+ */
+public class AsciiRenderer {
+
+    /**
+     * The fewest dirty cells a render must have before it is split across the render executor.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+
+    private final int widthInCharacters;
+    private final int heightInCharacters;
+    private final CellBuffer cells;
+    private final CellBuffer paintedCells;
+    private boolean paintedCellsValid;
+    private AsciiFont asciiFont;
+    private int scale = 1;
+    private int charWidth;
+    private int charHeight;
+    private GlyphAtlas atlas;
+    private BufferedImage image;
+    private Graphics imageGraphics;
+    private int[] imagePixels;
+    private final ColorizedGlyphCache glyphCache = new ColorizedGlyphCache();
+    private RenderMode renderMode = RenderMode.LOOKUP_OP;
+    private Executor renderExecutor;
+    private final AtomicInteger cellsScanned = new AtomicInteger();
+    private final AtomicInteger cellsRedrawn = new AtomicInteger();
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private SessionRecorder sessionRecorder;
+    private CellLayer[] layers = new CellLayer[0];
+    private boolean layersInvalid;
+    private char fallbackGlyph = ' ';
+    private int fallbackForeground = 0xffc0c0c0;
+    private int fallbackBackground = 0xff000000;
+
+    /**
+     * Class constructor specifying the width and height in characters and the AsciiFont.
+     * @param width
+     * @param height
+     * @param font if passing null, standard font CP437_9x16 will be used
+     */
+    public AsciiRenderer(int width, int height, AsciiFont font) {
+        cells = new CellBuffer(width, height);
+        paintedCells = new CellBuffer(width, height);
+        widthInCharacters = width;
+        heightInCharacters = height;
+
+        if (font == null)
+            font = AsciiFont.CP437_9x16;
+        setAsciiFont(font);
+    }
+
+    /**
+     * Gets the cells this renderer draws.
+     * @return
+     */
+    public CellBuffer getCells() {
+        return cells;
+    }
+
+    /**
+     * Gets the width in characters.
+     * @return
+     */
+    public int getWidthInCharacters() {
+        return widthInCharacters;
+    }
+
+    /**
+     * Gets the height in characters.
+     * @return
+     */
+    public int getHeightInCharacters() {
+        return heightInCharacters;
+    }
+
+    /**
+     * Gets the width, in pixels, of a character at the current scale.
+     * @return
+     */
+    public int getCharWidth() {
+        return charWidth;
+    }
+
+    /**
+     * Gets the height, in pixels, of a character at the current scale.
+     * @return
+     */
+    public int getCharHeight() {
+        return charHeight;
+    }
+
+    /**
+     * Gets the width, in pixels, of a full frame.
+     * @return
+     */
+    public int getPixelWidth() {
+        return charWidth * widthInCharacters;
+    }
+
+    /**
+     * Gets the height, in pixels, of a full frame.
+     * @return
+     */
+    public int getPixelHeight() {
+        return charHeight * heightInCharacters;
+    }
+
+    /**
+     * Gets the number of glyphs in the current font; characters must be below this.
+     * @return
+     */
+    public int getGlyphCount() {
+        return atlas.getGlyphCount();
+    }
+
+    /**
+     * Gets the currently selected font
+     * @return
+     */
+    public AsciiFont getAsciiFont() {
+        return asciiFont;
+    }
+
+    /**
+     * Gets the shared glyphs of the current font at the current scale.
+     * @return
+     */
+    public GlyphAtlas getGlyphAtlas() {
+        return atlas;
+    }
+
+    /**
+     * Sets the font, resizing the renderer's image and redrawing every cell on the next render.
+     * The glyphs come from the shared GlyphAtlas registry, so a font already used elsewhere is not reloaded.
+     * @param font
+     */
+    public void setAsciiFont(AsciiFont font) {
+        if (font == null)
+            throw new NullPointerException("font must not be null.");
+
+        if (this.asciiFont == font)
+            return;
+
+        this.asciiFont = font;
+        useAtlas(GlyphAtlas.forFont(font, scale));
+    }
+
+    /**
+     * Gets the integer zoom factor characters are drawn at.
+     * @return
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Sets the integer zoom factor characters are drawn at, resizing the renderer's image and redrawing
+     * every cell on the next render. Glyphs are magnified once per font and scale with nearest-neighbor
+     * sampling, so rendering stays as cheap per cell as at scale 1 and the font is not reloaded.
+     * @param scale the zoom factor, 1 or greater
+     */
+    public void setScale(int scale) {
+        if (scale < 1)
+            throw new IllegalArgumentException("scale " + scale + " must be greater than 0." );
+
+        if (this.scale == scale)
+            return;
+
+        this.scale = scale;
+        useAtlas(atlas.scaled(scale));
+    }
+
+    private void useAtlas(GlyphAtlas atlas) {
+        this.atlas = atlas;
+        this.charWidth = atlas.getCharWidth();
+        this.charHeight = atlas.getCharHeight();
+
+        image = new BufferedImage(getPixelWidth(), getPixelHeight(), BufferedImage.TYPE_INT_RGB);
+        imageGraphics = image.getGraphics();
+        imagePixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        glyphCache.clear();
+        invalidate();
+    }
+
+    /**
+     * Gets the image that <code>render()</code> draws into. It is replaced when the font or scale changes.
+     * @return
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the cache of colored glyph images used by the <code>LOOKUP_OP</code> mode.
+     * Its maximum size and hit/miss counters can be used to tune it for a palette.
+     * @return
+     */
+    public ColorizedGlyphCache getGlyphCache() {
+        return glyphCache;
+    }
+
+    /**
+     * Gets the way characters are rasterized by <code>render()</code>.
+     * @return
+     */
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    /**
+     * Sets the way characters are rasterized by <code>render()</code>.
+     * Every character is redrawn on the next render.
+     * @param renderMode
+     */
+    public void setRenderMode(RenderMode renderMode) {
+        if (renderMode == null)
+            throw new NullPointerException("renderMode must not be null.");
+
+        if (this.renderMode == renderMode)
+            return;
+
+        this.renderMode = renderMode;
+        invalidate();
+    }
+
+    /**
+     * Gets the executor used to rasterize bands of rows in parallel, or null if rendering is single threaded.
+     * @return
+     */
+    public Executor getRenderExecutor() {
+        return renderExecutor;
+    }
+
+    /**
+     * Sets the executor used to rasterize bands of rows in parallel. Only the <code>RASTER</code> render
+     * mode is parallelized, and only when at least <code>getParallelThreshold()</code> cells are dirty;
+     * smaller renders run inline.
+     * @param renderExecutor the executor, or null to render on a single thread
+     */
+    public void setRenderExecutor(Executor renderExecutor) {
+        this.renderExecutor = renderExecutor;
+    }
+
+    /**
+     * Turns parallel rasterization on the common <code>ForkJoinPool</code> on or off.
+     * @param parallel
+     */
+    public void setParallelRendering(boolean parallel) {
+        setRenderExecutor(parallel ? ForkJoinPool.commonPool() : null);
+    }
+
+    /**
+     * Gets the fewest dirty cells a render must have before it is rasterized in parallel.
+     * @return
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the fewest dirty cells a render must have before it is rasterized in parallel.
+     * @param parallelThreshold
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        if (parallelThreshold < 1)
+            throw new IllegalArgumentException("parallelThreshold " + parallelThreshold + " must be greater than 0." );
+
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Gets the recorder that every render appends a frame to, or null if nothing is recorded.
+     * @return
+     */
+    public SessionRecorder getSessionRecorder() {
+        return sessionRecorder;
+    }
+
+    /**
+     * Sets the recorder that every render with dirty cells appends a frame to. The cells as they are
+     * now are recorded right away, so the recording starts from the current screen.
+     * @param sessionRecorder the recorder, the same size as this renderer, or null to stop recording
+     */
+    public void setSessionRecorder(SessionRecorder sessionRecorder) {
+        if (sessionRecorder != null && (sessionRecorder.getWidth() != widthInCharacters || sessionRecorder.getHeight() != heightInCharacters))
+            throw new IllegalArgumentException("sessionRecorder is " + sessionRecorder.getWidth() + "x" + sessionRecorder.getHeight()
+                    + " but must be " + widthInCharacters + "x" + heightInCharacters + "." );
+
+        this.sessionRecorder = sessionRecorder;
+        if (sessionRecorder != null) {
+            cells.syncView();
+            cells.resolveIndexedColors();
+            sessionRecorder.capture(cells);
+        }
+    }
+
+    /**
+     * Adds a transparent layer on top of the others. Once any layer exists, the visible cells are
+     * composited from the layers by every render, and cells written directly are overwritten
+     * wherever a layer changes.
+     * @return the new layer
+     */
+    public CellLayer addLayer() {
+        return addLayer(layers.length);
+    }
+
+    /**
+     * Adds a transparent layer at a position in the stack, where 0 is the bottom.
+     * @param index
+     * @return the new layer
+     */
+    public CellLayer addLayer(int index) {
+        if (index < 0 || index > layers.length)
+            throw new IllegalArgumentException("index " + index + " must be within range [0," + layers.length + "]." );
+
+        CellLayer layer = new CellLayer(widthInCharacters, heightInCharacters);
+        CellLayer[] grown = new CellLayer[layers.length + 1];
+        System.arraycopy(layers, 0, grown, 0, index);
+        grown[index] = layer;
+        System.arraycopy(layers, index, grown, index + 1, layers.length - index);
+        layers = grown;
+        return layer;
+    }
+
+    /**
+     * Removes a layer; what it covered is composited again by the next render.
+     * @param layer
+     */
+    public void removeLayer(CellLayer layer) {
+        for (int i = 0; i < layers.length; i++) {
+            if (layers[i] == layer) {
+                CellLayer[] shrunk = new CellLayer[layers.length - 1];
+                System.arraycopy(layers, 0, shrunk, 0, i);
+                System.arraycopy(layers, i + 1, shrunk, i, layers.length - i - 1);
+                layers = shrunk;
+                layer.changeListener = null;
+                layersInvalid = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the layers from bottom to top.
+     * @return
+     */
+    public List<CellLayer> getLayers() {
+        return Collections.unmodifiableList(Arrays.asList(layers));
+    }
+
+    /**
+     * Sets what a composited cell shows where no layer covers its character, foreground or background.
+     * @param glyph      the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void setLayerFallback(char glyph, int foreground, int background) {
+        if (fallbackGlyph == glyph && fallbackForeground == foreground && fallbackBackground == background)
+            return;
+
+        fallbackGlyph = glyph;
+        fallbackForeground = foreground;
+        fallbackBackground = background;
+        layersInvalid = true;
+    }
+
+    /**
+     * Composites every cell some layer changed into the visible cells, then marks the layers clean.
+     * Each cell takes its character, foreground and background from the topmost layer that is opaque
+     * for them. Visible cells only become dirty if their values actually change. This is done by
+     * every render; call it directly to look at the composited cells before rendering.
+     */
+    public void compositeLayers() {
+        CellLayer[] layers = this.layers;
+        if (layers.length == 0)
+            return;
+
+        int left = widthInCharacters;
+        int top = heightInCharacters;
+        int right = 0;
+        int bottom = 0;
+        if (layersInvalid) {
+            left = 0;
+            top = 0;
+            right = widthInCharacters;
+            bottom = heightInCharacters;
+        } else {
+            for (CellLayer layer : layers) {
+                CellBuffer changed = layer.cells;
+                if (!changed.hasDirty())
+                    continue;
+
+                left = Math.min(left, changed.dirtyLeft);
+                top = Math.min(top, changed.dirtyTop);
+                right = Math.max(right, changed.dirtyRight);
+                bottom = Math.max(bottom, changed.dirtyBottom);
+            }
+        }
+
+        int wordsPerRow = cells.wordsPerRow;
+        int firstWord = left >>> 6;
+        int lastWord = (right - 1) >>> 6;
+
+        for (int y = top; y < bottom; y++) {
+            int row = y * wordsPerRow;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long bits = 0;
+                if (layersInvalid) {
+                    int remaining = widthInCharacters - (w << 6);
+                    bits = remaining >= 64 ? -1L : (1L << remaining) - 1;
+                } else {
+                    for (CellLayer layer : layers)
+                        bits |= layer.cells.dirty[row + w];
+                }
+
+                while (bits != 0) {
+                    int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    compositeCell(layers, x, y);
+                }
+            }
+        }
+
+        for (CellLayer layer : layers)
+            layer.cells.clearDirty();
+        layersInvalid = false;
+    }
+
+    private void compositeCell(CellLayer[] layers, int x, int y) {
+        int i = y * widthInCharacters + x;
+        char glyph = fallbackGlyph;
+        int foreground = fallbackForeground;
+        int background = fallbackBackground;
+        int uncovered = CellLayer.OPAQUE;
+
+        for (int l = layers.length - 1; l >= 0 && uncovered != 0; l--) {
+            CellLayer layer = layers[l];
+            int covers = layer.opacities[i] & uncovered;
+            if (covers == 0)
+                continue;
+
+            if ((covers & CellLayer.GLYPH) != 0)
+                glyph = layer.cells.glyphs[i];
+            if ((covers & CellLayer.FOREGROUND) != 0)
+                foreground = layer.cells.foregrounds[i];
+            if ((covers & CellLayer.BACKGROUND) != 0)
+                background = layer.cells.backgrounds[i];
+            uncovered &= ~covers;
+        }
+
+        cells.set(x, y, glyph, foreground, background);
+    }
+
+    /**
+     * Moves the contents of a section of cells by an offset and fills the strip this exposes, like
+     * <code>CellBuffer.scroll</code>. The already rendered pixels and the record of what was rendered
+     * are shifted by the same offset, so the next render only draws the exposed strip and whatever was
+     * already dirty. Layers are scrolled too, with their exposed strips left transparent.
+     * No bounds checking is done on the section.
+     * @param x          the distance from the left of the section
+     * @param y          the distance from the top of the section
+     * @param width      the width of the section
+     * @param height     the height of the section
+     * @param dx         how far to move the contents right, negative to move them left
+     * @param dy         how far to move the contents down, negative to move them up
+     * @param character  the character of exposed cells
+     * @param foreground the packed ARGB foreground color of exposed cells
+     * @param background the packed ARGB background color of exposed cells
+     */
+    public void scroll(int x, int y, int width, int height, int dx, int dy, char character, int foreground, int background) {
+        cells.syncView();
+
+        if (paintedCellsValid && Math.abs(dx) < width && Math.abs(dy) < height) {
+            paintedCells.shift(x, y, width, height, dx, dy);
+            shiftPixels(x, y, width, height, dx, dy);
+        }
+
+        cells.scroll(x, y, width, height, dx, dy, character, foreground, background);
+
+        for (CellLayer layer : layers)
+            layer.scroll(x, y, width, height, dx, dy);
+    }
+
+    /**
+     * Moves the rendered pixels of a section of cells, one array copy per row of pixels.
+     */
+    private void shiftPixels(int x, int y, int width, int height, int dx, int dy) {
+        int scanline = image.getWidth();
+        int length = (width - Math.abs(dx)) * charWidth;
+        int rows = (height - Math.abs(dy)) * charHeight;
+        int fromX = (dx > 0 ? x : x - dx) * charWidth;
+        int toX = fromX + dx * charWidth;
+        int top = y * charHeight;
+        int bottom = (y + height) * charHeight;
+
+        for (int r = 0; r < rows; r++) {
+            int toY = dy > 0 ? bottom - 1 - r : top + r;
+            int fromY = toY - dy * charHeight;
+            System.arraycopy(imagePixels, fromY * scanline + fromX, imagePixels, toY * scanline + toX, length);
+        }
+    }
+
+    /**
+     * Forgets what was last rendered so every cell is redrawn by the next <code>render()</code>.
+     */
+    public void invalidate() {
+        paintedCellsValid = false;
+        cells.markAllDirty();
+    }
+
+    /**
+     * Redraws the dirty cells into this renderer's image, then marks them clean.
+     * A dirty cell whose character and packed colors match what was last rendered there, such as one
+     * cleared and rewritten with the same values, is skipped. Layers are composited first, and if a
+     * session recorder is set, the changed cells are then appended to it as a frame.
+     */
+    public void render() {
+        cellsScanned.set(0);
+        cellsRedrawn.set(0);
+        cells.syncView();
+        cells.resolveIndexedColors();
+        compositeLayers();
+
+        if (!cells.hasDirty())
+            return;
+
+        if (sessionRecorder != null)
+            sessionRecorder.capture(cells);
+
+        Executor executor = renderExecutor;
+        int top = cells.dirtyTop;
+        int bottom = cells.dirtyBottom;
+        int rows = bottom - top;
+
+        if (executor != null && renderMode == RenderMode.RASTER && rows > 1 && cells.countDirty() >= parallelThreshold) {
+            renderBandsInParallel(executor, top, bottom);
+        } else {
+            renderDirtyRows(top, bottom);
+        }
+
+        cells.clearDirty();
+        paintedCellsValid = true;
+    }
+
+    /**
+     * Gets the number of dirty cells the most recent <code>render()</code> looked at.
+     * @return
+     */
+    public int getLastCellsScanned() {
+        return cellsScanned.get();
+    }
+
+    /**
+     * Gets the number of cells the most recent <code>render()</code> drew. Dirty cells that still
+     * matched what was drawn before are counted as scanned but not redrawn.
+     * @return
+     */
+    public int getLastCellsRedrawn() {
+        return cellsRedrawn.get();
+    }
+
+    /**
+     * Draws every cell into a caller-supplied image of at least <code>getPixelWidth()</code> by
+     * <code>getPixelHeight()</code> pixels, of type <code>TYPE_INT_RGB</code>, <code>TYPE_INT_ARGB</code>
+     * or <code>TYPE_INT_ARGB_PRE</code>. The image may be a subimage of a larger one. Layers are
+     * composited first, which clears their dirty cells and marks the cells they changed dirty; the
+     * dirty state of the cells is otherwise not touched.
+     * @param target the image to draw into
+     */
+    public void render(BufferedImage target) {
+        if (target == null)
+            throw new NullPointerException("target must not be null.");
+
+        int type = target.getType();
+        if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_ARGB_PRE)
+            throw new IllegalArgumentException("target must be TYPE_INT_RGB, TYPE_INT_ARGB or TYPE_INT_ARGB_PRE." );
+
+        if (target.getWidth() < getPixelWidth() || target.getHeight() < getPixelHeight())
+            throw new IllegalArgumentException("target is " + target.getWidth() + "x" + target.getHeight()
+                    + " but must be at least " + getPixelWidth() + "x" + getPixelHeight() + "." );
+
+        // a subimage shares its parent's array, starting further in and with the parent's stride
+        WritableRaster raster = target.getRaster();
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        int offset = buffer.getOffset() + sampleModel.getOffset(
+                raster.getMinX() - raster.getSampleModelTranslateX(),
+                raster.getMinY() - raster.getSampleModelTranslateY());
+        render(buffer.getData(), offset, sampleModel.getScanlineStride());
+    }
+
+    /**
+     * Draws every cell into a caller-supplied array of opaque ARGB pixels. Layers are composited
+     * first, as by <code>render(BufferedImage)</code>; the dirty state of the cells is otherwise not touched.
+     * @param pixels   the pixels to draw into
+     * @param offset   the index of the top left pixel
+     * @param scanline the distance in the array from one row of pixels to the next
+     */
+    public void render(int[] pixels, int offset, int scanline) {
+        if (pixels == null)
+            throw new NullPointerException("pixels must not be null.");
+
+        if (scanline < getPixelWidth())
+            throw new IllegalArgumentException("scanline " + scanline + " must be at least " + getPixelWidth() + "." );
+
+        if (offset < 0 || offset + (getPixelHeight() - 1) * scanline + getPixelWidth() > pixels.length)
+            throw new IllegalArgumentException("pixels is too small for a " + getPixelWidth() + "x" + getPixelHeight() + " frame." );
+
+        cells.syncView();
+        cells.resolveIndexedColors();
+        compositeLayers();
+
+        char[] glyphs = cells.glyphs;
+        int[] foregrounds = cells.foregrounds;
+        int[] backgrounds = cells.backgrounds;
+        for (int y = 0; y < heightInCharacters; y++) {
+            for (int x = 0; x < widthInCharacters; x++) {
+                int i = y * widthInCharacters + x;
+                rasterizeGlyph(pixels, offset + y * charHeight * scanline + x * charWidth, scanline,
+                        glyphs[i], foregrounds[i] | 0xff000000, backgrounds[i] | 0xff000000);
+            }
+        }
+    }
+
+    /**
+     * Splits the dirty rows into horizontal bands and rasterizes each band on the executor. Bands
+     * write to disjoint rows of the image, so no locking is needed; the last band runs on the
+     * calling thread, which then waits for the others.
+     */
+    private void renderBandsInParallel(Executor executor, int top, int bottom) {
+        int rows = bottom - top;
+        int bands = Math.min(rows, Math.max(2, Runtime.getRuntime().availableProcessors()));
+        final CountDownLatch done = new CountDownLatch(bands - 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        for (int band = 0; band < bands - 1; band++) {
+            final int bandTop = top + rows * band / bands;
+            final int bandBottom = top + rows * (band + 1) / bands;
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        renderDirtyRows(bandTop, bandBottom);
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        renderDirtyRows(top + rows * (bands - 1) / bands, bottom);
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t != null)
+            throw new IllegalStateException(t);
+    }
+
+    /**
+     * Rasterizes the dirty cells in rows [top, bottom) without marking them clean.
+     */
+    private void renderDirtyRows(int top, int bottom) {
+        char[] glyphs = cells.glyphs;
+        int[] foregrounds = cells.foregrounds;
+        int[] backgrounds = cells.backgrounds;
+        char[] paintedGlyphs = paintedCells.glyphs;
+        int[] paintedForegrounds = paintedCells.foregrounds;
+        int[] paintedBackgrounds = paintedCells.backgrounds;
+        boolean skipUnchanged = paintedCellsValid;
+        long[] dirty = cells.dirty;
+        int wordsPerRow = cells.wordsPerRow;
+        int firstWord = cells.dirtyLeft >>> 6;
+        int lastWord = (cells.dirtyRight - 1) >>> 6;
+        int scanline = image.getWidth();
+        int scanned = 0;
+        int redrawn = 0;
+
+        for (int y = top; y < bottom; y++) {
+            int row = y * wordsPerRow;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long bits = dirty[row + w];
+                while (bits != 0) {
+                    int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    scanned++;
+
+                    int i = y * widthInCharacters + x;
+                    char character = glyphs[i];
+                    int foreground = foregrounds[i];
+                    int background = backgrounds[i];
+
+                    if (skipUnchanged
+                            && character == paintedGlyphs[i]
+                            && foreground == paintedForegrounds[i]
+                            && background == paintedBackgrounds[i])
+                        continue;
+
+                    if (renderMode == RenderMode.RASTER) {
+                        rasterizeGlyph(imagePixels, y * charHeight * scanline + x * charWidth, scanline,
+                                character, foreground & 0xffffff, background & 0xffffff);
+                    } else {
+                        BufferedImage img = colorizedGlyph(character, foreground, background);
+                        imageGraphics.drawImage(img, x * charWidth, y * charHeight, null);
+                    }
+
+                    paintedGlyphs[i] = character;
+                    paintedForegrounds[i] = foreground;
+                    paintedBackgrounds[i] = background;
+                    redrawn++;
+                }
+            }
+        }
+
+        cellsScanned.addAndGet(scanned);
+        cellsRedrawn.addAndGet(redrawn);
+    }
+
+    /**
+     * Writes a glyph straight into an array of pixels. Each mask entry selects, per red, green and
+     * blue channel, whether the foreground or background color is used; this matches the
+     * <code>LookupOp</code> built by <code>setColors</code>. The alpha bits of the colors are
+     * written as they are given.
+     */
+    private void rasterizeGlyph(int[] pixels, int offset, int scanline, char character, int fg, int bg) {
+        byte[] mask = atlas.getMask(character);
+        int m = 0;
+
+        for (int gy = 0; gy < charHeight; gy++) {
+            for (int gx = 0; gx < charWidth; gx++) {
+                int bits = mask[m++];
+                int rgb;
+                if (bits == 0)
+                    rgb = bg;
+                else if (bits == 7)
+                    rgb = fg;
+                else
+                    rgb = bg & 0xff000000
+                        | ((bits & 4) != 0 ? fg : bg) & 0xff0000
+                        | ((bits & 2) != 0 ? fg : bg) & 0x00ff00
+                        | ((bits & 1) != 0 ? fg : bg) & 0x0000ff;
+                pixels[offset + gx] = rgb;
+            }
+            offset += scanline;
+        }
+    }
+
+    private BufferedImage colorizedGlyph(char character, int foreground, int background) {
+        BufferedImage img = glyphCache.get(character, foreground, background);
+        if (img == null) {
+            LookupOp op = setColors(background, foreground);
+            img = op.filter(atlas.getGlyph(character), null);
+            glyphCache.put(character, foreground, background, img);
+        }
+        return img;
+    }
+
+    /**
+     * Create a <code>LookupOp</code> object (lookup table) mapping the original
+     * pixels to the background and foreground colors, respectively.
+     * @param bgColor the packed ARGB background color
+     * @param fgColor the packed ARGB foreground color
+     * @return the <code>LookupOp</code> object (lookup table)
+     */
+    private LookupOp setColors(int bgColor, int fgColor) {
+        short[] a = new short[256];
+        short[] r = new short[256];
+        short[] g = new short[256];
+        short[] b = new short[256];
+
+        byte bga = (byte) (bgColor >>> 24);
+        byte bgr = (byte) (bgColor >> 16);
+        byte bgg = (byte) (bgColor >> 8);
+        byte bgb = (byte) (bgColor);
+
+        byte fga = (byte) (fgColor >>> 24);
+        byte fgr = (byte) (fgColor >> 16);
+        byte fgg = (byte) (fgColor >> 8);
+        byte fgb = (byte) (fgColor);
+
+        for (int i = 0; i < 256; i++) {
+            if (i == 0) {
+                a[i] = bga;
+                r[i] = bgr;
+                g[i] = bgg;
+                b[i] = bgb;
+            } else {
+                a[i] = fga;
+                r[i] = fgr;
+                g[i] = fgg;
+                b[i] = fgb;
+            }
+        }
+
+        short[][] table = {r, g, b, a};
+        return new LookupOp(new ShortLookupTable(0, table), null);
+    }
+}
@@ -0,0 +1,860 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A grid of characters stored as flat, row-major primitive arrays: one <code>char</code> and two
+ * packed ARGB colors per cell. Writing a cell does not allocate.
+ * <p>
+ * For compatibility with code written against <code>AsciiCharacterData[][]</code>, a column-major
+ * view can be requested. While a view exists it is kept up to date on every write, and edits made
+ * to it in place are copied back by <code>syncView()</code>.
+ * <p>
+ * Every write marks the cells it touches as dirty. Dirty cells are kept in a bitset, where each row
+ * starts on a new word, together with the bounding rectangle of everything dirty, so a renderer only
+ * needs to look at what changed since it last called <code>clearDirty()</code>.
+ */
+public class CellBuffer {
+    private final int width;
+    private final int height;
+    final char[] glyphs;
+    final int[] foregrounds;
+    final int[] backgrounds;
+    private AsciiCharacterData[][] view;
+    private boolean viewHandedOut;
+    IndexedColors indexedColors;
+    final int wordsPerRow;
+    final long[] dirty;
+    int dirtyLeft;
+    int dirtyTop;
+    int dirtyRight;
+    int dirtyBottom;
+
+    /**
+     * Class constructor specifying the width and height in characters.
+     * @param width
+     * @param height
+     */
+    public CellBuffer(int width, int height) {
+        if (width < 1)
+            throw new IllegalArgumentException("width " + width + " must be greater than 0." );
+
+        if (height < 1)
+            throw new IllegalArgumentException("height " + height + " must be greater than 0." );
+
+        this.width = width;
+        this.height = height;
+        this.glyphs = new char[width * height];
+        this.foregrounds = new int[width * height];
+        this.backgrounds = new int[width * height];
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.dirty = new long[wordsPerRow * height];
+        this.dirtyLeft = width;
+        this.dirtyTop = height;
+    }
+
+    /**
+     * Gets the width in characters.
+     * @return
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height in characters.
+     * @return
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the index of a cell in the row-major arrays.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * Gets the character at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public char getCharacter(int x, int y) {
+        return glyphs[y * width + x];
+    }
+
+    /**
+     * Gets the packed ARGB foreground color at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int getForeground(int x, int y) {
+        if (indexedColors != null)
+            return indexedColors.foreground(x, y, foregrounds[y * width + x]);
+
+        return foregrounds[y * width + x];
+    }
+
+    /**
+     * Gets the packed ARGB background color at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int getBackground(int x, int y) {
+        if (indexedColors != null)
+            return indexedColors.background(x, y, backgrounds[y * width + x]);
+
+        return backgrounds[y * width + x];
+    }
+
+    /**
+     * Sets the character and packed ARGB colors at the specified position.
+     * Nothing is marked dirty if the cell already holds these values.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param character  the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void set(int x, int y, char character, int foreground, int background) {
+        // the view cell is refreshed even when nothing changes, so a pending edit to it is overwritten
+        if (view != null)
+            updateView(x, y, character, foreground, background);
+        if (indexedColors != null)
+            indexedColors.clear(x, y);
+
+        int i = y * width + x;
+        if (glyphs[i] == character && foregrounds[i] == foreground && backgrounds[i] == background)
+            return;
+
+        glyphs[i] = character;
+        foregrounds[i] = foreground;
+        backgrounds[i] = background;
+        markDirty(x, y);
+    }
+
+    /**
+     * Sets the character and colors at the specified position.
+     * The colors are stored packed; the objects are only kept by the compatibility view.
+     * Nothing is marked dirty if the cell already holds equal values.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param character  the character
+     * @param foreground the foreground color
+     * @param background the background color
+     */
+    public void set(int x, int y, char character, Color foreground, Color background) {
+        int i = y * width + x;
+        int fg = foreground.getRGB();
+        int bg = background.getRGB();
+        if (indexedColors != null)
+            indexedColors.clear(x, y);
+        if (glyphs[i] != character || foregrounds[i] != fg || backgrounds[i] != bg) {
+            glyphs[i] = character;
+            foregrounds[i] = fg;
+            backgrounds[i] = bg;
+            markDirty(x, y);
+        }
+
+        if (view != null) {
+            AsciiCharacterData data = viewCell(x, y);
+            data.character = character;
+            data.foregroundColor = foreground;
+            data.backgroundColor = background;
+        }
+    }
+
+    /**
+     * Writes characters of a sequence into consecutive cells of a row, all with the same packed ARGB
+     * colors. Only cells that change are written, and they are marked dirty as one span.
+     * No bounds checking is done.
+     * @param x          the distance from the left of the first cell
+     * @param y          the distance from the top
+     * @param text       the characters to write
+     * @param start      the index in <code>text</code> of the first character
+     * @param end        the index in <code>text</code> after the last character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void write(int x, int y, CharSequence text, int start, int end, int foreground, int background) {
+        int offset = y * width + x - start;
+        int first = end;
+        int last = start - 1;
+
+        for (int i = start; i < end; i++) {
+            int c = offset + i;
+            char character = text.charAt(i);
+            if (glyphs[c] == character && foregrounds[c] == foreground && backgrounds[c] == background)
+                continue;
+
+            glyphs[c] = character;
+            foregrounds[c] = foreground;
+            backgrounds[c] = background;
+            if (first == end)
+                first = i;
+            last = i;
+        }
+
+        changedSpan(x - start, y, first, last);
+        if (indexedColors != null)
+            indexedColors.clear(x, y, end - start, 1);
+        if (view != null)
+            refreshView(x, y, end - start, 1);
+    }
+
+    /**
+     * Writes a slice of a character array into consecutive cells of a row, all with the same packed
+     * ARGB colors. Only cells that change are written, and they are marked dirty as one span.
+     * No bounds checking is done.
+     * @param x          the distance from the left of the first cell
+     * @param y          the distance from the top
+     * @param chars      the characters to write
+     * @param start      the index in <code>chars</code> of the first character
+     * @param end        the index in <code>chars</code> after the last character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void write(int x, int y, char[] chars, int start, int end, int foreground, int background) {
+        int offset = y * width + x - start;
+        int first = end;
+        int last = start - 1;
+
+        for (int i = start; i < end; i++) {
+            int c = offset + i;
+            char character = chars[i];
+            if (glyphs[c] == character && foregrounds[c] == foreground && backgrounds[c] == background)
+                continue;
+
+            glyphs[c] = character;
+            foregrounds[c] = foreground;
+            backgrounds[c] = background;
+            if (first == end)
+                first = i;
+            last = i;
+        }
+
+        changedSpan(x - start, y, first, last);
+        if (indexedColors != null)
+            indexedColors.clear(x, y, end - start, 1);
+        if (view != null)
+            refreshView(x, y, end - start, 1);
+    }
+
+    /**
+     * Marks the cells written from indices [first, last] of a span dirty, if any.
+     */
+    private void changedSpan(int x, int y, int first, int last) {
+        if (last >= first)
+            markDirty(x + first, y, last - first + 1, 1);
+    }
+
+    /**
+     * Sets every cell of a section to the same character and packed ARGB colors.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param width      the width of the section
+     * @param height     the height of the section
+     * @param character  the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void fill(int x, int y, int width, int height, char character, int foreground, int background) {
+        for (int yo = y; yo < y + height; yo++) {
+            int from = yo * this.width + x;
+            int to = from + width;
+            Arrays.fill(glyphs, from, to, character);
+            Arrays.fill(foregrounds, from, to, foreground);
+            Arrays.fill(backgrounds, from, to, background);
+        }
+        markDirty(x, y, width, height);
+        if (indexedColors != null)
+            indexedColors.clear(x, y, width, height);
+
+        if (view != null)
+            refreshView(x, y, width, height);
+    }
+
+    /**
+     * Copies a section from primitive arrays laid out row by row, one array copy per row and
+     * channel, and marks the whole section dirty at once. No bounds checking is done.
+     * @param characters  the characters to copy
+     * @param foregrounds the packed ARGB foreground colors to copy
+     * @param backgrounds the packed ARGB background colors to copy
+     * @param offset      the index in the arrays of the section's top left cell
+     * @param scansize    the distance in the arrays from one row of the section to the next
+     * @param x           the distance from the left to copy to
+     * @param y           the distance from the top to copy to
+     * @param width       the width of the section
+     * @param height      the height of the section
+     */
+    public void copyFrom(char[] characters, int[] foregrounds, int[] backgrounds, int offset, int scansize, int x, int y, int width, int height) {
+        for (int row = 0; row < height; row++) {
+            int from = offset + row * scansize;
+            int to = (y + row) * this.width + x;
+            System.arraycopy(characters, from, glyphs, to, width);
+            System.arraycopy(foregrounds, from, this.foregrounds, to, width);
+            System.arraycopy(backgrounds, from, this.backgrounds, to, width);
+        }
+        markDirty(x, y, width, height);
+        if (indexedColors != null)
+            indexedColors.clear(x, y, width, height);
+
+        if (view != null)
+            refreshView(x, y, width, height);
+    }
+
+    /**
+     * Copies a section of another buffer into this one and marks it dirty at once.
+     * No bounds checking is done; the buffers may be the same only if the sections do not overlap.
+     * @param source  the buffer to copy from
+     * @param sourceX the distance from the left to copy from
+     * @param sourceY the distance from the top to copy from
+     * @param x       the distance from the left to copy to
+     * @param y       the distance from the top to copy to
+     * @param width   the width of the section
+     * @param height  the height of the section
+     */
+    public void copyFrom(CellBuffer source, int sourceX, int sourceY, int x, int y, int width, int height) {
+        source.resolveIndexedColors();
+        copyFrom(source.glyphs, source.foregrounds, source.backgrounds, sourceY * source.width + sourceX, source.width, x, y, width, height);
+    }
+
+    /**
+     * Copies every cell that is dirty in the source, at the same position, and marks it dirty here
+     * even if the values are equal. The source's dirty cells are left as they are.
+     * Both buffers must be the same size.
+     * @param source the buffer to copy dirty cells from
+     */
+    public void copyDirtyFrom(CellBuffer source) {
+        if (source.width != width || source.height != height)
+            throw new IllegalArgumentException("source is " + source.width + "x" + source.height + " but must be " + width + "x" + height + "." );
+
+        if (!source.hasDirty())
+            return;
+
+        source.resolveIndexedColors();
+        int firstWord = source.dirtyLeft >>> 6;
+        int lastWord = (source.dirtyRight - 1) >>> 6;
+        for (int y = source.dirtyTop; y < source.dirtyBottom; y++) {
+            int row = y * wordsPerRow;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long bits = source.dirty[row + w];
+                if (bits == 0)
+                    continue;
+
+                dirty[row + w] |= bits;
+                if (indexedColors != null)
+                    indexedColors.clearWord(row + w, bits);
+                while (bits != 0) {
+                    int i = y * width + (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    glyphs[i] = source.glyphs[i];
+                    foregrounds[i] = source.foregrounds[i];
+                    backgrounds[i] = source.backgrounds[i];
+                }
+            }
+        }
+
+        dirtyLeft = Math.min(dirtyLeft, source.dirtyLeft);
+        dirtyTop = Math.min(dirtyTop, source.dirtyTop);
+        dirtyRight = Math.max(dirtyRight, source.dirtyRight);
+        dirtyBottom = Math.max(dirtyBottom, source.dirtyBottom);
+
+        if (view != null)
+            refreshView(source.dirtyLeft, source.dirtyTop, source.dirtyRight - source.dirtyLeft, source.dirtyBottom - source.dirtyTop);
+    }
+
+    /**
+     * Gets a column-major <code>AsciiCharacterData[width][height]</code> view of this buffer.
+     * The view is created on first use and then kept up to date by every write. Edits made to it
+     * in place are not seen until <code>syncView()</code> is called, and only edits made since the most
+     * recent call to this method are: the next <code>syncView()</code> compares every cell, then
+     * stops looking until the view is handed out again.
+     * @return
+     */
+    public AsciiCharacterData[][] characterView() {
+        resolveIndexedColors();
+        viewHandedOut = true;
+        if (view == null) {
+            view = new AsciiCharacterData[width][height];
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    int i = y * width + x;
+                    view[x][y] = new AsciiCharacterData(glyphs[i], new Color(foregrounds[i], true), new Color(backgrounds[i], true));
+                }
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Returns true if a compatibility view has been handed out.
+     * @return
+     */
+    public boolean hasView() {
+        return view != null;
+    }
+
+    /**
+     * Copies edits made in place through the compatibility view back into this buffer.
+     * Cells whose view colors were set to null keep their current colors.
+     * Does nothing unless the view was handed out since the last sync, so once a view exists, only
+     * frames after a call to <code>characterView()</code> pay for scanning it.
+     */
+    public void syncView() {
+        if (view == null || !viewHandedOut)
+            return;
+
+        viewHandedOut = false;
+
+        for (int x = 0; x < width; x++) {
+            AsciiCharacterData[] column = view[x];
+            for (int y = 0; y < height; y++) {
+                AsciiCharacterData data = column[y];
+                if (data == null)
+                    continue;
+
+                int i = y * width + x;
+                int foreground = data.foregroundColor == null ? foregrounds[i] : data.foregroundColor.getRGB();
+                int background = data.backgroundColor == null ? backgrounds[i] : data.backgroundColor.getRGB();
+                if (glyphs[i] == data.character && foregrounds[i] == foreground && backgrounds[i] == background)
+                    continue;
+
+                glyphs[i] = data.character;
+                foregrounds[i] = foreground;
+                backgrounds[i] = background;
+                markDirty(x, y);
+                if (indexedColors != null)
+                    indexedColors.clear(x, y);
+            }
+        }
+    }
+
+    /**
+     * Gives cells written with palette indices the current colors of entries that changed since they
+     * were drawn. Called before the arrays are read directly.
+     */
+    void resolveIndexedColors() {
+        if (indexedColors != null)
+            indexedColors.resolve(this);
+    }
+
+    /**
+     * Marks a single cell as dirty.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     */
+    public void markDirty(int x, int y) {
+        dirty[y * wordsPerRow + (x >>> 6)] |= 1L << x;
+
+        if (x < dirtyLeft)
+            dirtyLeft = x;
+        if (x >= dirtyRight)
+            dirtyRight = x + 1;
+        if (y < dirtyTop)
+            dirtyTop = y;
+        if (y >= dirtyBottom)
+            dirtyBottom = y + 1;
+    }
+
+    /**
+     * Marks a section of cells as dirty.
+     * @param x      the distance from the left
+     * @param y      the distance from the top
+     * @param width  the width of the section
+     * @param height the height of the section
+     */
+    public void markDirty(int x, int y, int width, int height) {
+        if (width < 1 || height < 1)
+            return;
+
+        int firstWord = x >>> 6;
+        int lastWord = (x + width - 1) >>> 6;
+        long firstMask = -1L << x;
+        long lastMask = -1L >>> (63 - ((x + width - 1) & 63));
+
+        for (int yo = y; yo < y + height; yo++) {
+            int row = yo * wordsPerRow;
+            if (firstWord == lastWord) {
+                dirty[row + firstWord] |= firstMask & lastMask;
+            } else {
+                dirty[row + firstWord] |= firstMask;
+                for (int w = firstWord + 1; w < lastWord; w++)
+                    dirty[row + w] = -1L;
+                dirty[row + lastWord] |= lastMask;
+            }
+        }
+
+        if (x < dirtyLeft)
+            dirtyLeft = x;
+        if (x + width > dirtyRight)
+            dirtyRight = x + width;
+        if (y < dirtyTop)
+            dirtyTop = y;
+        if (y + height > dirtyBottom)
+            dirtyBottom = y + height;
+    }
+
+    /**
+     * Marks every cell as dirty.
+     */
+    public void markAllDirty() {
+        markDirty(0, 0, width, height);
+    }
+
+    /**
+     * Returns true if the cell has been written since the last <code>clearDirty()</code>.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public boolean isDirty(int x, int y) {
+        return (dirty[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Returns true if any cell has been written since the last <code>clearDirty()</code>.
+     * @return
+     */
+    public boolean hasDirty() {
+        return dirtyRight > dirtyLeft;
+    }
+
+    /**
+     * Gets the bounding rectangle, in characters, of every dirty cell, or null if nothing is dirty.
+     * @return
+     */
+    public Rectangle getDirtyBounds() {
+        if (!hasDirty())
+            return null;
+
+        return new Rectangle(dirtyLeft, dirtyTop, dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+    }
+
+    /**
+     * Counts the dirty cells.
+     * @return
+     */
+    public int countDirty() {
+        int count = 0;
+        for (int y = dirtyTop; y < dirtyBottom; y++) {
+            int row = y * wordsPerRow;
+            for (int w = dirtyLeft >>> 6; w <= (dirtyRight - 1) >>> 6; w++)
+                count += Long.bitCount(dirty[row + w]);
+        }
+        return count;
+    }
+
+    /**
+     * Marks every cell as clean.
+     */
+    public void clearDirty() {
+        if (!hasDirty())
+            return;
+
+        int firstWord = dirtyLeft >>> 6;
+        int lastWord = (dirtyRight - 1) >>> 6;
+        for (int y = dirtyTop; y < dirtyBottom; y++) {
+            int row = y * wordsPerRow;
+            Arrays.fill(dirty, row + firstWord, row + lastWord + 1, 0L);
+        }
+
+        dirtyLeft = width;
+        dirtyTop = height;
+        dirtyRight = 0;
+        dirtyBottom = 0;
+    }
+
+    /**
+     * Moves the contents of a section by an offset and fills the strip this exposes. Cells are moved
+     * with one array copy per row and channel. Moved cells keep their dirty state and are not marked
+     * dirty themselves; only the exposed strip is, so a renderer that shifts its own pixels to match
+     * only has to draw that strip. No bounds checking is done on the section.
+     * @param x          the distance from the left of the section
+     * @param y          the distance from the top of the section
+     * @param width      the width of the section
+     * @param height     the height of the section
+     * @param dx         how far to move the contents right, negative to move them left
+     * @param dy         how far to move the contents down, negative to move them up
+     * @param character  the character of exposed cells
+     * @param foreground the packed ARGB foreground color of exposed cells
+     * @param background the packed ARGB background color of exposed cells
+     */
+    public void scroll(int x, int y, int width, int height, int dx, int dy, char character, int foreground, int background) {
+        if (width < 1 || height < 1)
+            return;
+
+        if (Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            fill(x, y, width, height, character, foreground, background);
+            return;
+        }
+
+        shift(x, y, width, height, dx, dy);
+
+        if (dy > 0)
+            fill(x, y, width, dy, character, foreground, background);
+        else if (dy < 0)
+            fill(x, y + height + dy, width, -dy, character, foreground, background);
+
+        int top = y + Math.max(dy, 0);
+        int rows = height - Math.abs(dy);
+        if (dx > 0)
+            fill(x, top, dx, rows, character, foreground, background);
+        else if (dx < 0)
+            fill(x + width + dx, top, -dx, rows, character, foreground, background);
+
+        if (view != null)
+            refreshView(x, y, width, height);
+    }
+
+    /**
+     * Moves the contents of a section by an offset together with their dirty bits, leaving the
+     * exposed strip as it was.
+     */
+    void shift(int x, int y, int width, int height, int dx, int dy) {
+        int length = width - Math.abs(dx);
+        int rows = height - Math.abs(dy);
+        if (length < 1 || rows < 1 || (dx == 0 && dy == 0))
+            return;
+
+        if (indexedColors != null) {
+            resolveIndexedColors();
+            indexedColors.shift(x, y, width, height, dx, dy);
+        }
+
+        boolean anyDirty = hasDirty();
+        long[] rowBits = anyDirty ? new long[wordsPerRow] : null;
+        int fromX = dx > 0 ? x : x - dx;
+        int toX = fromX + dx;
+
+        for (int r = 0; r < rows; r++) {
+            // copy away from the direction of movement so no row is overwritten before it is read
+            int toY = dy > 0 ? y + height - 1 - r : y + r;
+            int fromY = toY - dy;
+            int from = fromY * this.width + fromX;
+            int to = toY * this.width + toX;
+            System.arraycopy(glyphs, from, glyphs, to, length);
+            System.arraycopy(foregrounds, from, foregrounds, to, length);
+            System.arraycopy(backgrounds, from, backgrounds, to, length);
+
+            if (anyDirty) {
+                System.arraycopy(dirty, fromY * wordsPerRow, rowBits, 0, wordsPerRow);
+                int row = toY * wordsPerRow;
+                for (int i = 0; i < length; i++) {
+                    int sx = fromX + i;
+                    int tx = toX + i;
+                    long bit = (rowBits[sx >>> 6] >>> sx) & 1L;
+                    int word = row + (tx >>> 6);
+                    dirty[word] = dirty[word] & ~(1L << tx) | bit << tx;
+                }
+            }
+        }
+
+        if (anyDirty) {
+            int left = Math.max(dirtyLeft + dx, x);
+            int right = Math.min(dirtyRight + dx, x + width);
+            int top = Math.max(dirtyTop + dy, y);
+            int bottom = Math.min(dirtyBottom + dy, y + height);
+            if (left < right && top < bottom) {
+                dirtyLeft = Math.min(dirtyLeft, left);
+                dirtyRight = Math.max(dirtyRight, right);
+                dirtyTop = Math.min(dirtyTop, top);
+                dirtyBottom = Math.max(dirtyBottom, bottom);
+            }
+        }
+    }
+
+    /**
+     * Sets the colors of a cell written with palette indices to the palette's current colors, keeping
+     * its indices, and marks it dirty.
+     */
+    void recolor(int x, int y, int foreground, int background) {
+        int i = y * width + x;
+        foregrounds[i] = foreground;
+        backgrounds[i] = background;
+        markDirty(x, y);
+
+        if (view != null)
+            updateView(x, y, glyphs[i], foreground, background);
+    }
+
+    private AsciiCharacterData viewCell(int x, int y) {
+        AsciiCharacterData data = view[x][y];
+        if (data == null) {
+            data = new AsciiCharacterData();
+            view[x][y] = data;
+        }
+        return data;
+    }
+
+    /**
+     * Passes every cell of a section to a transformer, row by row, and stores what it changes. Changed
+     * cells are marked dirty. No bounds checking is done on the section.
+     * @param x           the distance from the left of the section
+     * @param y           the distance from the top of the section
+     * @param width       the width of the section
+     * @param height      the height of the section
+     * @param transformer
+     */
+    public void transform(int x, int y, int width, int height, CellTransformer transformer) {
+        resolveIndexedColors();
+        includeDirty(transformRows(x, y, x + width, y + height, transformer));
+    }
+
+    /**
+     * Passes every cell of a section to a transformer like <code>transform</code>, but splits the rows
+     * into bands transformed concurrently on a fork/join pool. Each band only writes its own rows,
+     * including their dirty bits, which start on a new word per row; the dirty bounds are merged once
+     * every band is done. No bounds checking is done on the section.
+     * @param x           the distance from the left of the section
+     * @param y           the distance from the top of the section
+     * @param width       the width of the section
+     * @param height      the height of the section
+     * @param transformer a transformer that only depends on the cell it is given
+     * @param pool        the pool to run the bands on
+     */
+    public void transformParallel(int x, int y, int width, int height, CellTransformer transformer, ForkJoinPool pool) {
+        if (width < 1 || height < 1)
+            return;
+
+        resolveIndexedColors();
+        includeDirty(pool.invoke(new TransformTask(x, y, x + width, y + height, transformer)));
+    }
+
+    /**
+     * Transforms the cells of rows [top, bottom) and columns [left, right), setting the dirty bits of
+     * those that changed but not the dirty bounds or the view.
+     * @return the bounds of the changed cells, or null if none changed
+     */
+    private Rectangle transformRows(int left, int top, int right, int bottom, CellTransformer transformer) {
+        CellData cell = new CellData();
+        int changedLeft = right;
+        int changedTop = bottom;
+        int changedRight = left;
+        int changedBottom = top;
+
+        for (int y = top; y < bottom; y++) {
+            int row = y * width;
+            int dirtyRow = y * wordsPerRow;
+            for (int x = left; x < right; x++) {
+                int i = row + x;
+                char character = glyphs[i];
+                int foreground = foregrounds[i];
+                int background = backgrounds[i];
+                cell.character = character;
+                cell.foreground = foreground;
+                cell.background = background;
+
+                transformer.transformCell(x, y, cell);
+
+                if (cell.character == character && cell.foreground == foreground && cell.background == background)
+                    continue;
+
+                glyphs[i] = cell.character;
+                foregrounds[i] = cell.foreground;
+                backgrounds[i] = cell.background;
+                dirty[dirtyRow + (x >>> 6)] |= 1L << x;
+                if (indexedColors != null)
+                    indexedColors.clear(x, y);
+
+                changedLeft = Math.min(changedLeft, x);
+                changedRight = Math.max(changedRight, x + 1);
+                changedTop = Math.min(changedTop, y);
+                changedBottom = y + 1;
+            }
+        }
+
+        if (changedLeft >= changedRight)
+            return null;
+
+        return new Rectangle(changedLeft, changedTop, changedRight - changedLeft, changedBottom - changedTop);
+    }
+
+    /**
+     * Grows the dirty bounds to cover cells whose dirty bits were already set.
+     */
+    private void includeDirty(Rectangle changed) {
+        if (changed == null)
+            return;
+
+        dirtyLeft = Math.min(dirtyLeft, changed.x);
+        dirtyTop = Math.min(dirtyTop, changed.y);
+        dirtyRight = Math.max(dirtyRight, changed.x + changed.width);
+        dirtyBottom = Math.max(dirtyBottom, changed.y + changed.height);
+
+        if (view != null)
+            refreshView(changed.x, changed.y, changed.width, changed.height);
+    }
+
+    /**
+     * Transforms a band of rows, splitting it in two while it holds more than
+     * <code>PARALLEL_CELLS</code> cells.
+     */
+    private final class TransformTask extends RecursiveTask<Rectangle> {
+        private static final long serialVersionUID = 1L;
+        private static final int PARALLEL_CELLS = 4096;
+
+        private final int left;
+        private final int top;
+        private final int right;
+        private final int bottom;
+        private final CellTransformer transformer;
+
+        TransformTask(int left, int top, int right, int bottom, CellTransformer transformer) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.transformer = transformer;
+        }
+
+        @Override
+        protected Rectangle compute() {
+            int rows = bottom - top;
+            if (rows < 2 || rows * (right - left) <= PARALLEL_CELLS)
+                return transformRows(left, top, right, bottom, transformer);
+
+            int middle = top + rows / 2;
+            TransformTask lower = new TransformTask(left, middle, right, bottom, transformer);
+            lower.fork();
+            Rectangle upper = new TransformTask(left, top, right, middle, transformer).compute();
+            Rectangle rest = lower.join();
+
+            if (upper == null)
+                return rest;
+            if (rest != null)
+                upper.add(rest);
+            return upper;
+        }
+    }
+
+    private void refreshView(int x, int y, int width, int height) {
+        for (int yo = y; yo < y + height; yo++) {
+            for (int xo = x; xo < x + width; xo++) {
+                int i = yo * this.width + xo;
+                updateView(xo, yo, glyphs[i], foregrounds[i], backgrounds[i]);
+            }
+        }
+    }
+
+    private void updateView(int x, int y, char character, int foreground, int background) {
+        AsciiCharacterData data = viewCell(x, y);
+        data.character = character;
+        if (data.foregroundColor == null || data.foregroundColor.getRGB() != foreground)
+            data.foregroundColor = new Color(foreground, true);
+        if (data.backgroundColor == null || data.backgroundColor.getRGB() != background)
+            data.backgroundColor = new Color(background, true);
+    }
+}
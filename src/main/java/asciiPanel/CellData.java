@@ -0,0 +1,28 @@
+package asciiPanel;
+
+/**
+ * The character and packed ARGB colors of one cell, as handed to a CellTransformer.
+ */
+public final class CellData {
+    public char character;
+    public int foreground;
+    public int background;
+
+    /**
+     * Class constructor for an empty cell.
+     */
+    public CellData() {
+    }
+
+    /**
+     * Class constructor specifying the character and packed ARGB colors.
+     * @param character
+     * @param foreground
+     * @param background
+     */
+    public CellData(char character, int foreground, int background) {
+        this.character = character;
+        this.foreground = foreground;
+        this.background = background;
+    }
+}
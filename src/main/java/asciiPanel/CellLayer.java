@@ -0,0 +1,358 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * One of the stacked layers an AsciiRenderer or AsciiPanel composites into its visible cells, such as
+ * terrain, items, actors, effects or UI. Layers are created with <code>addLayer</code>.
+ * <p>
+ * Besides a character and two packed ARGB colors, every cell has an opacity made of the
+ * <code>GLYPH</code>, <code>FOREGROUND</code> and <code>BACKGROUND</code> flags. A visible cell takes
+ * each of its character, foreground and background from the topmost layer that is opaque for it;
+ * a cell with no flags lets everything below show through. A monster can, for example, set only
+ * <code>GLYPH | FOREGROUND</code> to keep the background of the floor it stands on.
+ * <p>
+ * Each layer tracks its own dirty cells, and compositing only revisits cells some layer changed, so
+ * moving one actor costs the two cells it left and entered rather than a redraw of every layer.
+ */
+public class CellLayer {
+
+    /**
+     * Opacity flag for the character.
+     */
+    public static final int GLYPH = 1;
+
+    /**
+     * Opacity flag for the foreground color.
+     */
+    public static final int FOREGROUND = 2;
+
+    /**
+     * Opacity flag for the background color.
+     */
+    public static final int BACKGROUND = 4;
+
+    /**
+     * Opacity of a cell that covers everything below it.
+     */
+    public static final int OPAQUE = GLYPH | FOREGROUND | BACKGROUND;
+
+    /**
+     * Opacity of a cell that lets everything below it show through.
+     */
+    public static final int TRANSPARENT = 0;
+
+    final CellBuffer cells;
+    final byte[] opacities;
+    Runnable changeListener;
+
+    /**
+     * Class constructor specifying the width and height in characters. Every cell starts transparent.
+     * @param width
+     * @param height
+     */
+    CellLayer(int width, int height) {
+        cells = new CellBuffer(width, height);
+        opacities = new byte[width * height];
+    }
+
+    /**
+     * Gets the width in characters.
+     * @return
+     */
+    public int getWidth() {
+        return cells.getWidth();
+    }
+
+    /**
+     * Gets the height in characters.
+     * @return
+     */
+    public int getHeight() {
+        return cells.getHeight();
+    }
+
+    /**
+     * Gets the character at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public char getCharacter(int x, int y) {
+        checkPosition(x, y);
+        return cells.getCharacter(x, y);
+    }
+
+    /**
+     * Gets the packed ARGB foreground color at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int getForeground(int x, int y) {
+        checkPosition(x, y);
+        return cells.getForeground(x, y);
+    }
+
+    /**
+     * Gets the packed ARGB background color at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int getBackground(int x, int y) {
+        checkPosition(x, y);
+        return cells.getBackground(x, y);
+    }
+
+    /**
+     * Gets the opacity flags at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int getOpacity(int x, int y) {
+        checkPosition(x, y);
+        return opacities[cells.index(x, y)];
+    }
+
+    /**
+     * Sets an opaque cell.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param character  the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void set(int x, int y, char character, int foreground, int background) {
+        set(x, y, character, foreground, background, OPAQUE);
+    }
+
+    /**
+     * Sets an opaque cell.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param character  the character
+     * @param foreground the foreground color
+     * @param background the background color
+     */
+    public void set(int x, int y, char character, Color foreground, Color background) {
+        set(x, y, character, foreground.getRGB(), background.getRGB(), OPAQUE);
+    }
+
+    /**
+     * Sets a cell and which of its parts cover the layers below.
+     * Nothing is marked dirty if the cell already holds these values.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param character  the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @param opacity    a combination of <code>GLYPH</code>, <code>FOREGROUND</code> and <code>BACKGROUND</code>
+     */
+    public void set(int x, int y, char character, int foreground, int background, int opacity) {
+        checkPosition(x, y);
+        checkOpacity(opacity);
+
+        int i = cells.index(x, y);
+        if (opacities[i] == opacity && cells.glyphs[i] == character && cells.foregrounds[i] == foreground && cells.backgrounds[i] == background)
+            return;
+
+        opacities[i] = (byte) opacity;
+        cells.set(x, y, character, foreground, background);
+        cells.markDirty(x, y);
+        changed();
+    }
+
+    /**
+     * Changes which parts of a cell cover the layers below, keeping its character and colors.
+     * @param x       the distance from the left
+     * @param y       the distance from the top
+     * @param opacity a combination of <code>GLYPH</code>, <code>FOREGROUND</code> and <code>BACKGROUND</code>
+     */
+    public void setOpacity(int x, int y, int opacity) {
+        checkPosition(x, y);
+        checkOpacity(opacity);
+
+        int i = cells.index(x, y);
+        if (opacities[i] == opacity)
+            return;
+
+        opacities[i] = (byte) opacity;
+        cells.markDirty(x, y);
+        changed();
+    }
+
+    /**
+     * Makes a cell transparent.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     */
+    public void clear(int x, int y) {
+        setOpacity(x, y, TRANSPARENT);
+    }
+
+    /**
+     * Makes every cell transparent.
+     */
+    public void clear() {
+        fillOpacity(0, 0, getWidth(), getHeight(), TRANSPARENT);
+    }
+
+    /**
+     * Sets every cell of a section to the same character, colors and opacity.
+     * Nothing is marked dirty if every cell already holds these values.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param width      the width of the section
+     * @param height     the height of the section
+     * @param character  the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @param opacity    a combination of <code>GLYPH</code>, <code>FOREGROUND</code> and <code>BACKGROUND</code>
+     */
+    public void fill(int x, int y, int width, int height, char character, int foreground, int background, int opacity) {
+        checkSection(x, y, width, height);
+        checkOpacity(opacity);
+
+        if (holds(x, y, width, height, character, foreground, background, opacity))
+            return;
+
+        cells.fill(x, y, width, height, character, foreground, background);
+        for (int yo = y; yo < y + height; yo++) {
+            int from = cells.index(x, yo);
+            Arrays.fill(opacities, from, from + width, (byte) opacity);
+        }
+        changed();
+    }
+
+    /**
+     * Sets the opacity of every cell of a section, keeping their characters and colors.
+     * Nothing is marked dirty if every cell already has this opacity.
+     * @param x       the distance from the left
+     * @param y       the distance from the top
+     * @param width   the width of the section
+     * @param height  the height of the section
+     * @param opacity a combination of <code>GLYPH</code>, <code>FOREGROUND</code> and <code>BACKGROUND</code>
+     */
+    public void fillOpacity(int x, int y, int width, int height, int opacity) {
+        checkSection(x, y, width, height);
+        checkOpacity(opacity);
+
+        if (!hasOpacity(x, y, width, height, opacity))
+            storeOpacity(x, y, width, height, opacity);
+    }
+
+    private void storeOpacity(int x, int y, int width, int height, int opacity) {
+        for (int yo = y; yo < y + height; yo++) {
+            int from = cells.index(x, yo);
+            Arrays.fill(opacities, from, from + width, (byte) opacity);
+        }
+        cells.markDirty(x, y, width, height);
+        changed();
+    }
+
+    /**
+     * Moves the contents of a section by an offset, leaving the exposed strip transparent.
+     */
+    void scroll(int x, int y, int width, int height, int dx, int dy) {
+        int length = width - Math.abs(dx);
+        int rows = height - Math.abs(dy);
+        if (length < 1 || rows < 1) {
+            storeOpacity(x, y, width, height, TRANSPARENT);
+            return;
+        }
+
+        int fromX = dx > 0 ? x : x - dx;
+        for (int r = 0; r < rows; r++) {
+            int toY = dy > 0 ? y + height - 1 - r : y + r;
+            System.arraycopy(opacities, cells.index(fromX, toY - dy), opacities, cells.index(fromX + dx, toY), length);
+        }
+        cells.shift(x, y, width, height, dx, dy);
+
+        if (dy > 0)
+            storeOpacity(x, y, width, dy, TRANSPARENT);
+        else if (dy < 0)
+            storeOpacity(x, y + height + dy, width, -dy, TRANSPARENT);
+
+        if (dx > 0)
+            storeOpacity(x, y + Math.max(dy, 0), dx, rows, TRANSPARENT);
+        else if (dx < 0)
+            storeOpacity(x + width + dx, y + Math.max(dy, 0), -dx, rows, TRANSPARENT);
+    }
+
+    /**
+     * Returns true if any cell changed since the layer was last composited.
+     * @return
+     */
+    public boolean hasDirty() {
+        return cells.hasDirty();
+    }
+
+    /**
+     * Returns true if every cell of a section already holds a character, colors and opacity.
+     */
+    private boolean holds(int x, int y, int width, int height, char character, int foreground, int background, int opacity) {
+        if (!hasOpacity(x, y, width, height, opacity))
+            return false;
+
+        for (int yo = y; yo < y + height; yo++) {
+            int from = cells.index(x, yo);
+            for (int i = from; i < from + width; i++) {
+                if (cells.glyphs[i] != character || cells.foregrounds[i] != foreground || cells.backgrounds[i] != background)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if every cell of a section already has an opacity.
+     */
+    private boolean hasOpacity(int x, int y, int width, int height, int opacity) {
+        for (int yo = y; yo < y + height; yo++) {
+            int from = cells.index(x, yo);
+            for (int i = from; i < from + width; i++) {
+                if (opacities[i] != opacity)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private void changed() {
+        Runnable listener = changeListener;
+        if (listener != null)
+            listener.run();
+    }
+
+    private void checkPosition(int x, int y) {
+        if (x < 0 || x >= getWidth())
+            throw new IllegalArgumentException("x " + x + " must be within range [0," + getWidth() + ")" );
+
+        if (y < 0 || y >= getHeight())
+            throw new IllegalArgumentException("y " + y + " must be within range [0," + getHeight() + ")" );
+    }
+
+    private void checkSection(int x, int y, int width, int height) {
+        checkPosition(x, y);
+
+        if (width < 1)
+            throw new IllegalArgumentException("width " + width + " must be greater than 0." );
+
+        if (height < 1)
+            throw new IllegalArgumentException("height " + height + " must be greater than 0." );
+
+        if (x + width > getWidth())
+            throw new IllegalArgumentException("x + width " + (x + width) + " must be less than " + (getWidth() + 1) + "." );
+
+        if (y + height > getHeight())
+            throw new IllegalArgumentException("y + height " + (y + height) + " must be less than " + (getHeight() + 1) + "." );
+    }
+
+    private static void checkOpacity(int opacity) {
+        if ((opacity & ~OPAQUE) != 0)
+            throw new IllegalArgumentException("opacity " + opacity + " must be a combination of GLYPH, FOREGROUND and BACKGROUND." );
+    }
+}
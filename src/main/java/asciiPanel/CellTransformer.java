@@ -0,0 +1,20 @@
+package asciiPanel;
+
+/**
+ * Changes cells in place, one at a time, through primitive values. Unlike TileTransformer no color
+ * objects are involved, and cells are visited row by row in storage order.
+ * <p>
+ * Transformers passed to the parallel variants are called from several threads at once, each with
+ * its own CellData, and must only depend on the cell they are given, as lighting or fog of war does.
+ */
+public interface CellTransformer {
+
+    /**
+     * Changes a cell. The cell holds its current values on entry; whatever it holds on return is
+     * stored, and the cell is marked dirty if that differs.
+     * @param x    the distance from the left
+     * @param y    the distance from the top
+     * @param cell the cell's character and packed ARGB colors, reused for the next cell
+     */
+    void transformCell(int x, int y, CellData cell);
+}
@@ -0,0 +1,467 @@
+package asciiPanel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A sparse grid of cells far larger than any panel, such as an 8,000 by 8,000 tile world. Cells are
+ * stored in 64 by 64 chunks of primitive arrays that are only allocated once something other than
+ * the default cell is written to them; reading an unallocated chunk costs nothing.
+ * <p>
+ * With <code>enableSpilling</code>, the least recently used chunks beyond a limit are written to a
+ * spill file and dropped from memory, and read back the next time they are touched. Without it every
+ * allocated chunk stays in memory.
+ * <p>
+ * Use a WorldViewport to show part of the world on an AsciiPanel, or <code>copyTo</code> to copy part
+ * of it into any CellBuffer. This class is not thread safe.
+ */
+public class ChunkedWorld implements Closeable {
+
+    /**
+     * The width and height of a chunk in cells.
+     */
+    public static final int CHUNK_SIZE = 64;
+
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    private static final int SLOT_BYTES = CHUNK_CELLS * (2 + 4 + 4);
+
+    private final int width;
+    private final int height;
+    private final int chunksAcross;
+    private final char defaultGlyph;
+    private final int defaultForeground;
+    private final int defaultBackground;
+    private final LinkedHashMap<Integer, Chunk> resident = new LinkedHashMap<Integer, Chunk>(16, 0.75f, true);
+    private final Map<Integer, Integer> spilled = new HashMap<Integer, Integer>();
+    private int lastIndex = -1;
+    private Chunk lastChunk;
+    private int maximumResidentChunks = Integer.MAX_VALUE;
+    private File spillFile;
+    private RandomAccessFile spill;
+    private ByteBuffer slotBuffer;
+    private int slotCount;
+
+    /**
+     * Class constructor specifying the size of the world and what unwritten cells hold.
+     * @param width      the width in cells
+     * @param height     the height in cells
+     * @param glyph      the character of unwritten cells
+     * @param foreground the packed ARGB foreground color of unwritten cells
+     * @param background the packed ARGB background color of unwritten cells
+     */
+    public ChunkedWorld(int width, int height, char glyph, int foreground, int background) {
+        if (width < 1)
+            throw new IllegalArgumentException("width " + width + " must be greater than 0." );
+
+        if (height < 1)
+            throw new IllegalArgumentException("height " + height + " must be greater than 0." );
+
+        this.width = width;
+        this.height = height;
+        this.chunksAcross = (width + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+        this.defaultGlyph = glyph;
+        this.defaultForeground = foreground;
+        this.defaultBackground = background;
+    }
+
+    /**
+     * Gets the width in cells.
+     * @return
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height in cells.
+     * @return
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Starts keeping at most a number of chunks in memory, writing the least recently used ones to a
+     * spill file. The file is created, or truncated, and deleted again by <code>close()</code>.
+     * @param spillFile             the file to spill chunks to
+     * @param maximumResidentChunks the most chunks to keep in memory
+     * @throws IOException
+     */
+    public void enableSpilling(File spillFile, int maximumResidentChunks) throws IOException {
+        if (maximumResidentChunks < 1)
+            throw new IllegalArgumentException("maximumResidentChunks " + maximumResidentChunks + " must be greater than 0." );
+
+        if (spill != null)
+            throw new IllegalStateException("spilling is already enabled.");
+
+        this.spill = new RandomAccessFile(spillFile, "rw");
+        this.spill.setLength(0);
+        this.spillFile = spillFile;
+        this.slotBuffer = ByteBuffer.allocateDirect(SLOT_BYTES);
+        this.maximumResidentChunks = maximumResidentChunks;
+        evict();
+    }
+
+    /**
+     * Gets the number of chunks that hold written cells, in memory or spilled.
+     * @return
+     */
+    public int getAllocatedChunkCount() {
+        int count = spilled.size();
+        for (Integer index : resident.keySet()) {
+            if (!spilled.containsKey(index))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of chunks currently in memory.
+     * @return
+     */
+    public int getResidentChunkCount() {
+        return resident.size();
+    }
+
+    /**
+     * Gets the character at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public char getCharacter(int x, int y) {
+        Chunk chunk = chunkAt(x, y, false);
+        return chunk == null ? defaultGlyph : chunk.glyphs[offset(x, y)];
+    }
+
+    /**
+     * Gets the packed ARGB foreground color at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int getForeground(int x, int y) {
+        Chunk chunk = chunkAt(x, y, false);
+        return chunk == null ? defaultForeground : chunk.foregrounds[offset(x, y)];
+    }
+
+    /**
+     * Gets the packed ARGB background color at the specified position.
+     * @param x the distance from the left
+     * @param y the distance from the top
+     * @return
+     */
+    public int getBackground(int x, int y) {
+        Chunk chunk = chunkAt(x, y, false);
+        return chunk == null ? defaultBackground : chunk.backgrounds[offset(x, y)];
+    }
+
+    /**
+     * Sets the character and packed ARGB colors at the specified position. Writing the default cell
+     * into an unallocated chunk does not allocate it.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param character  the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void set(int x, int y, char character, int foreground, int background) {
+        boolean isDefault = character == defaultGlyph && foreground == defaultForeground && background == defaultBackground;
+        Chunk chunk = chunkAt(x, y, !isDefault);
+        if (chunk == null)
+            return;
+
+        int i = offset(x, y);
+        chunk.glyphs[i] = character;
+        chunk.foregrounds[i] = foreground;
+        chunk.backgrounds[i] = background;
+        chunk.modified = true;
+    }
+
+    /**
+     * Sets every cell of a section to the same character and packed ARGB colors, one chunk at a time.
+     * @param x          the distance from the left
+     * @param y          the distance from the top
+     * @param width      the width of the section
+     * @param height     the height of the section
+     * @param character  the character
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     */
+    public void fill(int x, int y, int width, int height, char character, int foreground, int background) {
+        checkSection(x, y, width, height);
+
+        boolean isDefault = character == defaultGlyph && foreground == defaultForeground && background == defaultBackground;
+        for (int cy = y >>> CHUNK_SHIFT; cy <= (y + height - 1) >>> CHUNK_SHIFT; cy++) {
+            for (int cx = x >>> CHUNK_SHIFT; cx <= (x + width - 1) >>> CHUNK_SHIFT; cx++) {
+                int left = Math.max(x, cx << CHUNK_SHIFT);
+                int top = Math.max(y, cy << CHUNK_SHIFT);
+                int right = Math.min(x + width, (cx + 1) << CHUNK_SHIFT);
+                int bottom = Math.min(y + height, (cy + 1) << CHUNK_SHIFT);
+
+                Chunk chunk = chunk(cy * chunksAcross + cx, !isDefault);
+                if (chunk == null)
+                    continue;
+
+                for (int yo = top; yo < bottom; yo++) {
+                    int from = offset(left, yo);
+                    int to = from + right - left;
+                    Arrays.fill(chunk.glyphs, from, to, character);
+                    Arrays.fill(chunk.foregrounds, from, to, foreground);
+                    Arrays.fill(chunk.backgrounds, from, to, background);
+                }
+                chunk.modified = true;
+            }
+        }
+    }
+
+    /**
+     * Copies a section of the world into a cell buffer, one block copy per chunk. Parts of the section
+     * outside the world are filled with the default cell.
+     * @param worldX the distance from the left of the world to copy from, which may be negative
+     * @param worldY the distance from the top of the world to copy from, which may be negative
+     * @param target the buffer to copy to
+     * @param x      the distance from the left of the target to copy to
+     * @param y      the distance from the top of the target to copy to
+     * @param width  the width of the section
+     * @param height the height of the section
+     */
+    public void copyTo(int worldX, int worldY, final CellBuffer target, int x, int y, int width, int height) {
+        forEachRegion(worldX, worldY, x, y, width, height, new RegionVisitor() {
+            public void chunk(char[] glyphs, int[] foregrounds, int[] backgrounds, int offset, int x, int y, int width, int height) {
+                target.copyFrom(glyphs, foregrounds, backgrounds, offset, CHUNK_SIZE, x, y, width, height);
+            }
+
+            public void fill(int x, int y, int width, int height, char glyph, int foreground, int background) {
+                target.fill(x, y, width, height, glyph, foreground, background);
+            }
+        });
+    }
+
+    /**
+     * Stops spilling and deletes the spill file, if spilling is enabled. Chunks that were only in the
+     * spill file are lost and read as default cells again; chunks in memory are kept.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (spill == null)
+            return;
+
+        spilled.clear();
+        maximumResidentChunks = Integer.MAX_VALUE;
+        slotCount = 0;
+        slotBuffer = null;
+
+        spill.close();
+        spill = null;
+        if (!spillFile.delete())
+            spillFile.deleteOnExit();
+    }
+
+    /**
+     * Receives the pieces a section of the world is made of.
+     */
+    interface RegionVisitor {
+        /**
+         * A piece stored in a chunk, laid out with a scansize of <code>CHUNK_SIZE</code>.
+         */
+        void chunk(char[] glyphs, int[] foregrounds, int[] backgrounds, int offset, int x, int y, int width, int height);
+
+        /**
+         * A piece that holds only the given cell.
+         */
+        void fill(int x, int y, int width, int height, char glyph, int foreground, int background);
+    }
+
+    /**
+     * Splits a section of the world along chunk edges and hands each piece to a visitor, positioned
+     * relative to <code>(x, y)</code>.
+     */
+    void forEachRegion(int worldX, int worldY, int x, int y, int width, int height, RegionVisitor visitor) {
+        if (width < 1 || height < 1)
+            return;
+
+        // the parts of the section outside the world
+        int left = Math.max(worldX, 0);
+        int top = Math.max(worldY, 0);
+        int right = Math.min(worldX + width, this.width);
+        int bottom = Math.min(worldY + height, this.height);
+        if (left >= right || top >= bottom) {
+            visitor.fill(x, y, width, height, defaultGlyph, defaultForeground, defaultBackground);
+            return;
+        }
+        if (top > worldY)
+            visitor.fill(x, y, width, top - worldY, defaultGlyph, defaultForeground, defaultBackground);
+        if (bottom < worldY + height)
+            visitor.fill(x, y + bottom - worldY, width, worldY + height - bottom, defaultGlyph, defaultForeground, defaultBackground);
+        if (left > worldX)
+            visitor.fill(x, y + top - worldY, left - worldX, bottom - top, defaultGlyph, defaultForeground, defaultBackground);
+        if (right < worldX + width)
+            visitor.fill(x + right - worldX, y + top - worldY, worldX + width - right, bottom - top, defaultGlyph, defaultForeground, defaultBackground);
+
+        for (int cy = top >>> CHUNK_SHIFT; cy <= (bottom - 1) >>> CHUNK_SHIFT; cy++) {
+            for (int cx = left >>> CHUNK_SHIFT; cx <= (right - 1) >>> CHUNK_SHIFT; cx++) {
+                int chunkLeft = Math.max(left, cx << CHUNK_SHIFT);
+                int chunkTop = Math.max(top, cy << CHUNK_SHIFT);
+                int chunkRight = Math.min(right, (cx + 1) << CHUNK_SHIFT);
+                int chunkBottom = Math.min(bottom, (cy + 1) << CHUNK_SHIFT);
+                int tx = x + chunkLeft - worldX;
+                int ty = y + chunkTop - worldY;
+
+                Chunk chunk = chunk(cy * chunksAcross + cx, false);
+                if (chunk == null)
+                    visitor.fill(tx, ty, chunkRight - chunkLeft, chunkBottom - chunkTop, defaultGlyph, defaultForeground, defaultBackground);
+                else
+                    visitor.chunk(chunk.glyphs, chunk.foregrounds, chunk.backgrounds, offset(chunkLeft, chunkTop),
+                            tx, ty, chunkRight - chunkLeft, chunkBottom - chunkTop);
+            }
+        }
+    }
+
+    private void checkSection(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 1 || height < 1 || x + width > this.width || y + height > this.height)
+            throw new IllegalArgumentException("section " + x + "," + y + " " + width + "x" + height
+                    + " must be within the world's " + this.width + "x" + this.height + " cells." );
+    }
+
+    private static int offset(int x, int y) {
+        return ((y & (CHUNK_SIZE - 1)) << CHUNK_SHIFT) | (x & (CHUNK_SIZE - 1));
+    }
+
+    private Chunk chunkAt(int x, int y, boolean allocate) {
+        if (x < 0 || x >= width)
+            throw new IllegalArgumentException("x " + x + " must be within range [0," + width + ")" );
+
+        if (y < 0 || y >= height)
+            throw new IllegalArgumentException("y " + y + " must be within range [0," + height + ")" );
+
+        return chunk((y >>> CHUNK_SHIFT) * chunksAcross + (x >>> CHUNK_SHIFT), allocate);
+    }
+
+    /**
+     * Gets a chunk, reading it back from the spill file if needed.
+     * @return the chunk, or null if it was never allocated and allocate is false
+     */
+    private Chunk chunk(int index, boolean allocate) {
+        if (index == lastIndex)
+            return lastChunk;
+
+        Chunk chunk = resident.get(index);
+        if (chunk == null) {
+            Integer slot = spilled.get(index);
+            if (slot != null) {
+                chunk = new Chunk();
+                read(slot, chunk);
+            } else if (allocate) {
+                chunk = new Chunk();
+                Arrays.fill(chunk.glyphs, defaultGlyph);
+                Arrays.fill(chunk.foregrounds, defaultForeground);
+                Arrays.fill(chunk.backgrounds, defaultBackground);
+                chunk.modified = true;
+            } else {
+                return null;
+            }
+
+            resident.put(index, chunk);
+            evict();
+        }
+
+        lastIndex = index;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Spills the least recently used chunks until no more than the maximum are in memory.
+     */
+    private void evict() {
+        if (resident.size() <= maximumResidentChunks)
+            return;
+
+        Iterator<Map.Entry<Integer, Chunk>> entries = resident.entrySet().iterator();
+        while (resident.size() > maximumResidentChunks) {
+            Map.Entry<Integer, Chunk> eldest = entries.next();
+            Chunk chunk = eldest.getValue();
+            Integer index = eldest.getKey();
+
+            if (chunk.modified || !spilled.containsKey(index)) {
+                Integer slot = spilled.get(index);
+                if (slot == null) {
+                    slot = slotCount++;
+                    spilled.put(index, slot);
+                }
+                write(slot, chunk);
+            }
+
+            entries.remove();
+            if (chunk == lastChunk) {
+                lastIndex = -1;
+                lastChunk = null;
+            }
+        }
+    }
+
+    private void write(int slot, Chunk chunk) {
+        ByteBuffer buffer = slotBuffer;
+        buffer.clear();
+        buffer.asCharBuffer().put(chunk.glyphs);
+        buffer.position(CHUNK_CELLS * 2);
+        buffer.asIntBuffer().put(chunk.foregrounds);
+        buffer.position(CHUNK_CELLS * 6);
+        buffer.asIntBuffer().put(chunk.backgrounds);
+        buffer.clear();
+
+        try {
+            FileChannel channel = spill.getChannel();
+            long position = (long) slot * SLOT_BYTES;
+            while (buffer.hasRemaining())
+                position += channel.write(buffer, position);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not spill a chunk: " + e.getMessage(), e);
+        }
+        chunk.modified = false;
+    }
+
+    private void read(int slot, Chunk chunk) {
+        ByteBuffer buffer = slotBuffer;
+        buffer.clear();
+
+        try {
+            FileChannel channel = spill.getChannel();
+            long position = (long) slot * SLOT_BYTES;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0)
+                    throw new IOException("the spill file is truncated.");
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read a spilled chunk: " + e.getMessage(), e);
+        }
+
+        buffer.clear();
+        buffer.asCharBuffer().get(chunk.glyphs);
+        buffer.position(CHUNK_CELLS * 2);
+        buffer.asIntBuffer().get(chunk.foregrounds);
+        buffer.position(CHUNK_CELLS * 6);
+        buffer.asIntBuffer().get(chunk.backgrounds);
+        chunk.modified = false;
+    }
+
+    private static final class Chunk {
+        final char[] glyphs = new char[CHUNK_CELLS];
+        final int[] foregrounds = new int[CHUNK_CELLS];
+        final int[] backgrounds = new int[CHUNK_CELLS];
+        boolean modified;
+    }
+}
@@ -0,0 +1,179 @@
+package asciiPanel;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least-recently-used cache of glyph images that have already been
+ * colored for a specific foreground and background color. Entries are keyed by
+ * the character plus the packed ARGB values of both colors.
+ * <p>
+ * This class is not thread safe; it is meant to be used from the thread that paints.
+ */
+public class ColorizedGlyphCache {
+
+    /**
+     * The number of colored glyphs kept when no size is specified.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 4096;
+
+    private final LinkedHashMap<Key, BufferedImage> entries;
+    private final Key probe = new Key();
+    private int maximumSize;
+    private long hits;
+    private long misses;
+
+    /**
+     * Class constructor using the default maximum size.
+     */
+    public ColorizedGlyphCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Class constructor specifying the maximum number of cached glyphs.
+     * @param maximumSize the maximum number of colored glyphs to keep, 0 disables caching
+     */
+    public ColorizedGlyphCache(int maximumSize) {
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("maximumSize " + maximumSize + " must be 0 or greater." );
+
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<Key, BufferedImage>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest) {
+                return size() > ColorizedGlyphCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the colored glyph, or null if it is not cached.
+     * Every call counts as either a hit or a miss.
+     * @param character  the character of the glyph
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @return the cached image or null
+     */
+    public BufferedImage get(char character, int foreground, int background) {
+        probe.set(character, foreground, background);
+        BufferedImage image = entries.get(probe);
+        if (image == null)
+            misses++;
+        else
+            hits++;
+        return image;
+    }
+
+    /**
+     * Adds a colored glyph, evicting the least recently used one if the cache is full.
+     * @param character  the character of the glyph
+     * @param foreground the packed ARGB foreground color
+     * @param background the packed ARGB background color
+     * @param image      the colored glyph image
+     */
+    public void put(char character, int foreground, int background, BufferedImage image) {
+        if (maximumSize == 0)
+            return;
+
+        Key key = new Key();
+        key.set(character, foreground, background);
+        entries.put(key, image);
+    }
+
+    /**
+     * Removes every cached glyph. The hit and miss counters are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the maximum number of colored glyphs kept.
+     * @return
+     */
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * Sets the maximum number of colored glyphs kept, evicting the least recently used ones if needed.
+     * @param maximumSize the maximum number of colored glyphs to keep, 0 disables caching
+     */
+    public void setMaximumSize(int maximumSize) {
+        if (maximumSize < 0)
+            throw new IllegalArgumentException("maximumSize " + maximumSize + " must be 0 or greater." );
+
+        this.maximumSize = maximumSize;
+
+        if (entries.size() > maximumSize) {
+            Iterator<Key> keys = entries.keySet().iterator();
+            while (entries.size() > maximumSize) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of colored glyphs currently cached.
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of lookups that found a cached glyph.
+     * @return
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of lookups that did not find a cached glyph.
+     * @return
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Resets the hit and miss counters to 0.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+
+    private static final class Key {
+        private char character;
+        private int foreground;
+        private int background;
+
+        void set(char character, int foreground, int background) {
+            this.character = character;
+            this.foreground = foreground;
+            this.background = background;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+
+            Key key = (Key) other;
+            return character == key.character && foreground == key.foreground && background == key.background;
+        }
+
+        @Override
+        public int hashCode() {
+            return (character * 31 + foreground) * 31 + background;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package asciiPanel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Paces the painting of an AsciiPanel. Started with <code>AsciiPanel.startFrameScheduler</code>, it
+ * takes over from the repaint the panel otherwise asks Swing for after every burst of writes, so a
+ * screen changed by many writes is painted as one frame at a predictable time.
+ * <p>
+ * At a target frame rate a timer thread ticks once per frame period and, if anything was written
+ * since the last frame, queues one frame on the event dispatch thread, which paints the changed
+ * cells at once. Nothing is painted while nothing changes. A tick that finds the previous frame still
+ * queued or painting is dropped rather than queued behind it, and ticks that passed while the timer
+ * itself was held up are dropped too instead of being caught up on. A frame that finishes after the
+ * next tick was due counts as a missed deadline.
+ * <p>
+ * In <code>MANUAL</code> mode there is no timer: writes are only shown when <code>requestFrame()</code>
+ * is called, which suits turn-based games that finish a whole turn before showing it.
+ */
+public class FrameScheduler {
+
+    /**
+     * The target frame rate of a scheduler that only paints when <code>requestFrame()</code> is called.
+     */
+    public static final int MANUAL = 0;
+
+    /**
+     * A source of time for a scheduler driven by calls to <code>tick()</code> instead of a timer.
+     */
+    interface Clock {
+        long nanoTime();
+    }
+
+    private final AsciiPanel panel;
+    private final Clock clock;
+    private final int targetFps;
+    private final long periodNanos;
+    private final AtomicBoolean frameQueued = new AtomicBoolean();
+    private final AtomicLong framesPainted = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong missedDeadlines = new AtomicLong();
+    private volatile boolean dirty;
+    private volatile boolean requested;
+    private volatile boolean running;
+    private volatile long deadline;
+    private long next;
+    private Thread timer;
+
+    private final Runnable frame = new Runnable() {
+        public void run() {
+            paintFrame();
+        }
+    };
+
+    /**
+     * Class constructor specifying the panel to paint and the target frame rate.
+     * @param panel
+     * @param targetFps the frames per second to paint at most, or <code>MANUAL</code>
+     */
+    FrameScheduler(AsciiPanel panel, int targetFps) {
+        this(panel, targetFps, null);
+    }
+
+    /**
+     * Class constructor specifying the panel to paint, the target frame rate and a clock. A scheduler
+     * with a clock starts no timer thread: it ticks whenever <code>tick()</code> is called, and takes
+     * the time from the clock, so tests can step it frame by frame.
+     * @param panel
+     * @param targetFps the frames per second to paint at most, or <code>MANUAL</code>
+     * @param clock     the clock, or null to use <code>System.nanoTime()</code> and a timer thread
+     */
+    FrameScheduler(AsciiPanel panel, int targetFps, Clock clock) {
+        if (targetFps < 0)
+            throw new IllegalArgumentException("targetFps " + targetFps + " must be at least 0." );
+
+        this.panel = panel;
+        this.clock = clock;
+        this.targetFps = targetFps;
+        this.periodNanos = targetFps == MANUAL ? 0 : TimeUnit.SECONDS.toNanos(1) / targetFps;
+    }
+
+    /**
+     * Gets the target frame rate, or <code>MANUAL</code> if frames are only painted on request.
+     * @return
+     */
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * Returns true if frames are only painted when <code>requestFrame()</code> is called.
+     * @return
+     */
+    public boolean isManual() {
+        return targetFps == MANUAL;
+    }
+
+    /**
+     * Returns true until the panel stops this scheduler.
+     * @return
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Paints everything written so far as soon as the event dispatch thread gets to it. Nothing
+     * happens if nothing changed since the last frame. If a frame is already queued, no second one is
+     * added; if one is painting, another follows it. May be called from any thread.
+     */
+    public void requestFrame() {
+        if (!running || !dirty)
+            return;
+
+        requested = true;
+        queueFrame(0);
+    }
+
+    /**
+     * Gets the number of frames painted.
+     * @return
+     */
+    public long getFramesPainted() {
+        return framesPainted.get();
+    }
+
+    /**
+     * Gets the number of ticks skipped because the previous frame was still queued or painting, or
+     * because the timer fell behind.
+     * @return
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * Gets the number of frames that finished painting after the next tick was due.
+     * @return
+     */
+    public long getMissedDeadlines() {
+        return missedDeadlines.get();
+    }
+
+    /**
+     * Sets the painted, dropped and missed deadline counts back to 0.
+     */
+    public void resetStatistics() {
+        framesPainted.set(0);
+        framesDropped.set(0);
+        missedDeadlines.set(0);
+    }
+
+    void start() {
+        running = true;
+        next = nanoTime() + periodNanos;
+        if (isManual() || clock != null)
+            return;
+
+        timer = new Thread(new Runnable() {
+            public void run() {
+                runTimer();
+            }
+        }, "AsciiPanel frame scheduler");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    void stop() {
+        running = false;
+        if (timer != null)
+            timer.interrupt();
+    }
+
+    /**
+     * Notes that cells changed since the last frame.
+     */
+    void markDirty() {
+        dirty = true;
+    }
+
+    private void runTimer() {
+        while (running) {
+            long wait;
+            while (running && (wait = next - System.nanoTime()) > 0)
+                LockSupport.parkNanos(this, wait);
+
+            if (!running)
+                return;
+
+            tick();
+        }
+    }
+
+    /**
+     * Handles the tick that was due, queueing a frame if anything changed, and works out when the
+     * next one is due. Ticks the timer fell a whole period or more behind on are dropped. Called by
+     * the timer thread, or by whoever drives a scheduler with a clock.
+     */
+    void tick() {
+        long late = nanoTime() - next;
+        if (late >= periodNanos) {
+            long skipped = late / periodNanos;
+            framesDropped.addAndGet(skipped);
+            next += skipped * periodNanos;
+        }
+
+        if (dirty && !queueFrame(next + periodNanos))
+            framesDropped.incrementAndGet();
+
+        next += periodNanos;
+    }
+
+    private long nanoTime() {
+        return clock == null ? System.nanoTime() : clock.nanoTime();
+    }
+
+    private boolean queueFrame(long deadline) {
+        if (!frameQueued.compareAndSet(false, true))
+            return false;
+
+        this.deadline = deadline;
+        SwingUtilities.invokeLater(frame);
+        return true;
+    }
+
+    private void paintFrame() {
+        dirty = false;
+        requested = false;
+        if (running) {
+            panel.paintScheduledFrame();
+            framesPainted.incrementAndGet();
+
+            long due = deadline;
+            if (due != 0 && nanoTime() - due > 0)
+                missedDeadlines.incrementAndGet();
+        }
+        frameQueued.set(false);
+
+        if (requested && dirty && running)
+            queueFrame(0);
+    }
+}
@@ -0,0 +1,73 @@
+package asciiPanel;
+
+/**
+ * What painting one frame of an AsciiPanel cost. Instances are reused from frame to frame.
+ */
+public final class FrameStats {
+    long paintNanos;
+    int cellsScanned;
+    int cellsRedrawn;
+    long pixelsBlitted;
+    long glyphCacheHits;
+    long glyphCacheMisses;
+    long bytesAllocated;
+
+    FrameStats() {}
+
+    /**
+     * Gets how long the paint took, in nanoseconds, including rendering and copying to the screen.
+     * @return
+     */
+    public long getPaintNanos() {
+        return paintNanos;
+    }
+
+    /**
+     * Gets the number of dirty cells the renderer looked at.
+     * @return
+     */
+    public int getCellsScanned() {
+        return cellsScanned;
+    }
+
+    /**
+     * Gets the number of cells the renderer actually drew; the others held what was already drawn.
+     * @return
+     */
+    public int getCellsRedrawn() {
+        return cellsRedrawn;
+    }
+
+    /**
+     * Gets the number of pixels copied to the screen.
+     * @return
+     */
+    public long getPixelsBlitted() {
+        return pixelsBlitted;
+    }
+
+    /**
+     * Gets the number of colored glyphs found in the glyph cache during the frame.
+     * @return
+     */
+    public long getGlyphCacheHits() {
+        return glyphCacheHits;
+    }
+
+    /**
+     * Gets the number of colored glyphs that had to be created during the frame.
+     * @return
+     */
+    public long getGlyphCacheMisses() {
+        return glyphCacheMisses;
+    }
+
+    /**
+     * Gets the bytes the painting thread allocated during the frame, or -1 if the JVM does not
+     * report per-thread allocation.
+     * @return
+     */
+    public long getBytesAllocated() {
+        return bytesAllocated;
+    }
+}
@@ -0,0 +1,591 @@
+package asciiPanel;
+
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.imageio.ImageIO;
+
+/**
+ * The glyphs of one AsciiFont, sliced out of the font's sprite sheets, together with a channel mask
+ * per glyph for direct rasterizing. Atlases are shared between renderers.
+ * <p>
+ * <code>forFont</code> keeps a process-wide registry, so every panel and renderer using the same font
+ * shares one decoded atlas. The registry only holds soft references: an atlas stays cached for as long
+ * as anything uses it, and one nobody uses any more is kept until memory runs short. Switching back to
+ * a recently used font is then a lookup instead of a decode.
+ * <p>
+ * Fonts whose sprite sheet was precompiled by GlyphMaskCompiler at build time load from the packed
+ * <code>.glyphs</code> resource next to it, which skips PNG decoding altogether; their glyph images are
+ * only built the first time something asks for one. Other fonts are read from the PNG.
+ * <p>
+ * <code>scaled</code> gives the same glyphs magnified by an integer factor with nearest-neighbor
+ * sampling. Each scale is built once from the loaded masks and kept, softly, alongside them.
+ * <p>
+ * Glyphs come in pages of 256, one sprite sheet each; glyph code <code>c</code> is on page
+ * <code>c >> 8</code>. The first page is loaded with the atlas and every other page the first time
+ * one of its glyphs is drawn, so memory grows with the pages in use rather than with the size of the
+ * font. <code>evictUnusedPages</code> drops pages that have not been drawn from since it was last
+ * called; they are loaded again if they are needed later.
+ */
+public final class GlyphAtlas {
+    /**
+     * The first bytes of a precompiled <code>.glyphs</code> resource, <code>AGLM</code>.
+     */
+    static final int COMPILED_MAGIC = 0x41474c4d;
+
+    /**
+     * The version of the precompiled format this class reads.
+     */
+    static final int COMPILED_VERSION = 1;
+
+    private static final Map<AsciiFont, AtlasReference> atlases = new HashMap<AsciiFont, AtlasReference>();
+    private static final ReferenceQueue<GlyphAtlas> collected = new ReferenceQueue<GlyphAtlas>();
+    private static final AtomicLong loadCount = new AtomicLong();
+    private static final AtomicLong loadNanos = new AtomicLong();
+
+    private final AsciiFont font;
+    private final int scale;
+    private final GlyphAtlas unscaled;
+    private final int charWidth;
+    private final int charHeight;
+    private final AtomicReferenceArray<Page> pages;
+    private final Map<Integer, SoftReference<GlyphAtlas>> scaledAtlases = new HashMap<Integer, SoftReference<GlyphAtlas>>();
+    private volatile Page missing;
+
+    private GlyphAtlas(AsciiFont font, Page first) {
+        this.font = font;
+        this.scale = 1;
+        this.unscaled = null;
+        this.charWidth = font.getWidth();
+        this.charHeight = font.getHeight();
+        this.pages = new AtomicReferenceArray<Page>(font.getPageCount());
+        pages.set(0, first);
+    }
+
+    private GlyphAtlas(GlyphAtlas unscaled, int scale) {
+        this.font = unscaled.font;
+        this.scale = scale;
+        this.unscaled = unscaled;
+        this.charWidth = unscaled.charWidth * scale;
+        this.charHeight = unscaled.charHeight * scale;
+        this.pages = new AtomicReferenceArray<Page>(unscaled.pages.length());
+    }
+
+    /**
+     * Gets the shared atlas for a font, loading it only if it is not cached.
+     * This is safe to call from any thread.
+     * @param font
+     * @return
+     */
+    public static GlyphAtlas forFont(AsciiFont font) {
+        if (font == null)
+            throw new NullPointerException("font must not be null.");
+
+        synchronized (atlases) {
+            expungeCollected();
+
+            AtlasReference reference = atlases.get(font);
+            GlyphAtlas atlas = reference == null ? null : reference.get();
+            if (atlas != null)
+                return atlas;
+
+            atlas = load(font);
+            if (atlas != null) {
+                atlases.put(font, new AtlasReference(font, atlas, collected));
+                return atlas;
+            }
+        }
+
+        // the sprite sheet could not be read; hand out blank glyphs without caching them
+        return blank(font);
+    }
+
+    /**
+     * Gets the shared atlas for a font magnified by an integer factor. Only the unscaled glyphs are
+     * ever loaded; other scales are built from them.
+     * @param font
+     * @param scale the magnification, 1 or greater
+     * @return
+     */
+    public static GlyphAtlas forFont(AsciiFont font, int scale) {
+        return forFont(font).scaled(scale);
+    }
+
+    /**
+     * Gets the number of fonts whose atlas is currently cached.
+     * @return
+     */
+    public static int cachedCount() {
+        synchronized (atlases) {
+            expungeCollected();
+            int count = 0;
+            for (AtlasReference reference : atlases.values()) {
+                if (reference.get() != null)
+                    count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Gets the number of font pages loaded from a compiled resource or sprite sheet so far. Cache hits
+     * and scaled atlases are not counted.
+     * @return
+     */
+    public static long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * Gets the total time spent loading font pages, in nanoseconds.
+     * @return
+     */
+    public static long getLoadNanos() {
+        return loadNanos.get();
+    }
+
+    /**
+     * Drops every cached atlas. Atlases still in use keep working; they are just no longer shared
+     * with renderers created afterwards.
+     */
+    public static void clearCache() {
+        synchronized (atlases) {
+            atlases.clear();
+        }
+    }
+
+    /**
+     * Gets the font these glyphs were loaded from.
+     * @return
+     */
+    public AsciiFont getFont() {
+        return font;
+    }
+
+    /**
+     * Gets the magnification of these glyphs relative to the font.
+     * @return
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Gets these glyphs magnified by an integer factor relative to the font, building them the first
+     * time that scale is asked for. This is safe to call from any thread.
+     * @param scale the magnification, 1 or greater
+     * @return
+     */
+    public GlyphAtlas scaled(int scale) {
+        if (scale < 1)
+            throw new IllegalArgumentException("scale " + scale + " must be greater than 0." );
+
+        if (unscaled != null)
+            return unscaled.scaled(scale);
+
+        if (scale == 1)
+            return this;
+
+        synchronized (scaledAtlases) {
+            SoftReference<GlyphAtlas> reference = scaledAtlases.get(scale);
+            GlyphAtlas atlas = reference == null ? null : reference.get();
+            if (atlas == null) {
+                atlas = new GlyphAtlas(this, scale);
+                scaledAtlases.put(scale, new SoftReference<GlyphAtlas>(atlas));
+            }
+            return atlas;
+        }
+    }
+
+    /**
+     * Gets the width, in pixels, of a glyph.
+     * @return
+     */
+    public int getCharWidth() {
+        return charWidth;
+    }
+
+    /**
+     * Gets the height, in pixels, of a glyph.
+     * @return
+     */
+    public int getCharHeight() {
+        return charHeight;
+    }
+
+    /**
+     * Gets the number of glyphs; characters must be below this to be written. Characters at or above
+     * it, left over from a font with more pages, are drawn blank.
+     * @return
+     */
+    public int getGlyphCount() {
+        return pages.length() * 256;
+    }
+
+    /**
+     * Gets the number of pages of 256 glyphs.
+     * @return
+     */
+    public int getPageCount() {
+        return pages.length();
+    }
+
+    /**
+     * Returns true if a page is currently loaded.
+     * @param page
+     * @return
+     */
+    public boolean isPageLoaded(int page) {
+        return pages.get(page) != null;
+    }
+
+    /**
+     * Gets the number of pages currently loaded.
+     * @return
+     */
+    public int getLoadedPageCount() {
+        int count = 0;
+        for (int i = 0; i < pages.length(); i++) {
+            if (pages.get(i) != null)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Drops every page except the first that no glyph was drawn from since the previous call, and
+     * starts tracking use afresh for the next one. Calling this now and then, for example when a level
+     * changes, keeps only the pages in use loaded. The first page, which holds the characters used
+     * most, always stays loaded. This is safe to call from any thread.
+     * @return the number of pages dropped
+     */
+    public int evictUnusedPages() {
+        int evicted = 0;
+        synchronized (pages) {
+            for (int i = 1; i < pages.length(); i++) {
+                Page page = pages.get(i);
+                if (page == null)
+                    continue;
+
+                if (page.used) {
+                    page.used = false;
+                } else {
+                    pages.set(i, null);
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Gets the uncolored glyph image for a character. It must not be modified.
+     * @param character
+     * @return
+     */
+    public BufferedImage getGlyph(char character) {
+        Page page = page(character >>> 8);
+        int i = character & 0xff;
+        BufferedImage glyph = page.glyphs.get(i);
+        if (glyph == null) {
+            page.glyphs.compareAndSet(i, null, unscaled != null
+                    ? magnify(unscaled.getGlyph(character), scale)
+                    : expand(page.masks[i]));
+            glyph = page.glyphs.get(i);
+        }
+        return glyph;
+    }
+
+    /**
+     * Gets the mask of a glyph, one byte per pixel in row-major order. Bits 4, 2 and 1 are set where
+     * the red, green and blue channels of the glyph are non-zero, in other words where that channel
+     * takes the foreground color. It must not be modified.
+     * @param character
+     * @return
+     */
+    byte[] getMask(char character) {
+        return page(character >>> 8).masks[character & 0xff];
+    }
+
+    private Page page(int index) {
+        if (index >= pages.length())
+            return missing();
+
+        Page page = pages.get(index);
+        if (page == null)
+            page = loadPage(index);
+        page.used = true;
+        return page;
+    }
+
+    private Page missing() {
+        Page page = missing;
+        if (page == null) {
+            byte[][] masks = new byte[256][];
+            Arrays.fill(masks, new byte[charWidth * charHeight]);
+            page = new Page(new AtomicReferenceArray<BufferedImage>(256), masks);
+            missing = page;
+        }
+        return page;
+    }
+
+    private Page loadPage(int index) {
+        synchronized (pages) {
+            Page page = pages.get(index);
+            if (page == null) {
+                page = unscaled != null ? magnify(unscaled.page(index), unscaled.charWidth, unscaled.charHeight, scale) : readPage(font, index);
+                if (page == null) {
+                    System.err.println("loadGlyphs(): cannot read page " + index + " of " + font.getFontFilename());
+                    page = slice(font, null);
+                }
+                pages.set(index, page);
+            }
+            return page;
+        }
+    }
+
+    private static void expungeCollected() {
+        Reference<? extends GlyphAtlas> reference;
+        while ((reference = collected.poll()) != null) {
+            AtlasReference atlasReference = (AtlasReference) reference;
+            if (atlases.get(atlasReference.font) == atlasReference)
+                atlases.remove(atlasReference.font);
+        }
+    }
+
+    private static GlyphAtlas load(AsciiFont font) {
+        Page first = readPage(font, 0);
+        return first == null ? null : new GlyphAtlas(font, first);
+    }
+
+    /**
+     * Reads one page of a font, from its precompiled glyph masks if there are any and otherwise by
+     * decoding its sprite sheet.
+     * @return the page, or null if neither could be read
+     */
+    private static Page readPage(AsciiFont font, int page) {
+        long start = System.nanoTime();
+        Page loaded = readCompiled(font, page);
+        if (loaded == null)
+            loaded = readSheet(font, page);
+
+        loadNanos.addAndGet(System.nanoTime() - start);
+        loadCount.incrementAndGet();
+        return loaded;
+    }
+
+    /**
+     * Loads the first page of a font from its precompiled glyph masks.
+     * @param font
+     * @return the atlas, or null if there is no usable compiled resource for the font
+     */
+    static GlyphAtlas loadCompiled(AsciiFont font) {
+        Page first = readCompiled(font, 0);
+        return first == null ? null : new GlyphAtlas(font, first);
+    }
+
+    /**
+     * Loads the first page of a font by decoding its PNG sprite sheet.
+     * @param font
+     * @return the atlas, or null if the sheet could not be read
+     */
+    static GlyphAtlas loadSheet(AsciiFont font) {
+        Page first = readSheet(font, 0);
+        return first == null ? null : new GlyphAtlas(font, first);
+    }
+
+    /**
+     * Gets the name of the precompiled resource for a font's sprite sheet, such as
+     * <code>cp437_9x16.glyphs</code> for <code>cp437_9x16.png</code>.
+     * @param fontFilename
+     * @return
+     */
+    static String compiledFilename(String fontFilename) {
+        int dot = fontFilename.lastIndexOf('.');
+        return (dot < 0 ? fontFilename : fontFilename.substring(0, dot)) + ".glyphs";
+    }
+
+    private static Page readCompiled(AsciiFont font, int page) {
+        InputStream stream = GlyphAtlas.class.getClassLoader()
+                .getResourceAsStream(compiledFilename(font.getPageFilename(page)));
+        if (stream == null)
+            return null;
+
+        int charWidth = font.getWidth();
+        int charHeight = font.getHeight();
+        int pixels = charWidth * charHeight;
+        int bytesPerGlyph = (pixels + 7) >>> 3;
+        byte[] bits = new byte[256 * bytesPerGlyph];
+
+        DataInputStream in = new DataInputStream(stream);
+        try {
+            // a file compiled for a different glyph size is stale; ignore it and use the sheet
+            if (in.readInt() != COMPILED_MAGIC
+                    || in.readUnsignedByte() != COMPILED_VERSION
+                    || in.readUnsignedShort() != charWidth
+                    || in.readUnsignedShort() != charHeight
+                    || in.readUnsignedShort() != 256)
+                return null;
+            in.readFully(bits);
+        } catch (IOException e) {
+            System.err.println("loadGlyphs(): " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // nothing left to read
+            }
+        }
+
+        byte[][] masks = new byte[256][];
+        for (int i = 0; i < 256; i++) {
+            byte[] mask = new byte[pixels];
+            int base = i * bytesPerGlyph;
+            for (int p = 0; p < pixels; p++) {
+                if ((bits[base + (p >>> 3)] & (0x80 >>> (p & 7))) != 0)
+                    mask[p] = 7;
+            }
+            masks[i] = mask;
+        }
+        return new Page(new AtomicReferenceArray<BufferedImage>(256), masks);
+    }
+
+    private static Page readSheet(AsciiFont font, int page) {
+        URL resource = GlyphAtlas.class.getClassLoader().getResource(font.getPageFilename(page));
+        if (resource == null)
+            return null;
+
+        BufferedImage glyphSprite;
+        try {
+            glyphSprite = ImageIO.read(resource);
+        } catch (IOException e) {
+            System.err.println("loadGlyphs(): " + e.getMessage());
+            return null;
+        }
+
+        if (glyphSprite == null)
+            return null;
+
+        return slice(font, glyphSprite);
+    }
+
+    private static GlyphAtlas blank(AsciiFont font) {
+        return new GlyphAtlas(font, slice(font, null));
+    }
+
+    private static Page slice(AsciiFont font, BufferedImage glyphSprite) {
+        int charWidth = font.getWidth();
+        int charHeight = font.getHeight();
+        AtomicReferenceArray<BufferedImage> glyphs = new AtomicReferenceArray<BufferedImage>(256);
+        byte[][] masks = new byte[256][];
+
+        for (int i = 0; i < 256; i++) {
+            int sx = (i % 16) * charWidth;
+            int sy = (i / 16) * charHeight;
+
+            BufferedImage glyph = new BufferedImage(charWidth, charHeight, BufferedImage.TYPE_INT_ARGB);
+            if (glyphSprite != null)
+                glyph.getGraphics().drawImage(glyphSprite, 0, 0, charWidth, charHeight, sx, sy, sx + charWidth, sy + charHeight, null);
+            glyphs.set(i, glyph);
+            masks[i] = mask(glyph);
+        }
+        return new Page(glyphs, masks);
+    }
+
+    private BufferedImage expand(byte[] mask) {
+        // compiled fonts are two-tone: opaque white where the glyph is set, opaque black elsewhere
+        BufferedImage glyph = new BufferedImage(charWidth, charHeight, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < charHeight; y++) {
+            for (int x = 0; x < charWidth; x++)
+                glyph.setRGB(x, y, mask[y * charWidth + x] != 0 ? 0xffffffff : 0xff000000);
+        }
+        return glyph;
+    }
+
+    private static byte[] mask(BufferedImage glyph) {
+        int width = glyph.getWidth();
+        int height = glyph.getHeight();
+        byte[] mask = new byte[width * height];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int argb = glyph.getRGB(x, y);
+                mask[y * width + x] = (byte) (((argb & 0xff0000) != 0 ? 4 : 0)
+                                            | ((argb & 0x00ff00) != 0 ? 2 : 0)
+                                            | ((argb & 0x0000ff) != 0 ? 1 : 0));
+            }
+        }
+        return mask;
+    }
+
+    private static byte[] magnify(byte[] mask, int width, int height, int scale) {
+        int scaledWidth = width * scale;
+        byte[] magnified = new byte[mask.length * scale * scale];
+
+        for (int y = 0; y < height; y++) {
+            int row = y * scale * scaledWidth;
+            for (int x = 0; x < width; x++) {
+                byte bits = mask[y * width + x];
+                for (int i = 0; i < scale; i++)
+                    magnified[row + x * scale + i] = bits;
+            }
+            for (int i = 1; i < scale; i++)
+                System.arraycopy(magnified, row, magnified, row + i * scaledWidth, scaledWidth);
+        }
+        return magnified;
+    }
+
+    private static Page magnify(Page page, int width, int height, int scale) {
+        byte[][] masks = new byte[page.masks.length][];
+        for (int i = 0; i < masks.length; i++)
+            masks[i] = magnify(page.masks[i], width, height, scale);
+        return new Page(new AtomicReferenceArray<BufferedImage>(masks.length), masks);
+    }
+
+    private static BufferedImage magnify(BufferedImage glyph, int scale) {
+        int width = glyph.getWidth();
+        int height = glyph.getHeight();
+        BufferedImage magnified = new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_ARGB);
+
+        for (int y = 0; y < height * scale; y++) {
+            for (int x = 0; x < width * scale; x++)
+                magnified.setRGB(x, y, glyph.getRGB(x / scale, y / scale));
+        }
+        return magnified;
+    }
+
+    /**
+     * 256 glyphs, their images built on first use.
+     */
+    private static final class Page {
+        final AtomicReferenceArray<BufferedImage> glyphs;
+        final byte[][] masks;
+        volatile boolean used;
+
+        Page(AtomicReferenceArray<BufferedImage> glyphs, byte[][] masks) {
+            this.glyphs = glyphs;
+            this.masks = masks;
+        }
+    }
+
+    private static final class AtlasReference extends SoftReference<GlyphAtlas> {
+        private final AsciiFont font;
+
+        AtlasReference(AsciiFont font, GlyphAtlas atlas, ReferenceQueue<GlyphAtlas> queue) {
+            super(atlas, queue);
+            this.font = font;
+        }
+    }
+}
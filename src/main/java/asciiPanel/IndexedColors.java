@@ -0,0 +1,232 @@
+package asciiPanel;
+
+/**
+ * Remembers which cells of a CellBuffer were written with palette indices, and which indices. The
+ * cells hold the colors the indices resolved to when they were last drawn. A palette change does not
+ * touch them: it only marks the cells using a changed entry as stale and dirty, and their colors are
+ * looked up again from the palette before they are read for drawing, so any number of changes between
+ * two frames costs one lookup per affected cell.
+ * <p>
+ * Every other write to a cell clears its index, so only cells last written with
+ * <code>AsciiPanel.writeIndexed</code> follow the palette. The bitsets are laid out like the buffer's
+ * dirty bits, each row starting on a new word, so rows can be cleared concurrently.
+ */
+final class IndexedColors {
+    private final int width;
+    private final int wordsPerRow;
+    private final int[] palette;
+    private final byte[] foregroundIndices;
+    private final byte[] backgroundIndices;
+    private final long[] indexedForegrounds;
+    private final long[] indexedBackgrounds;
+    private final long[] stale;
+    private boolean anyStale;
+
+    /**
+     * @param palette the palette's colors, read whenever a stale cell is resolved
+     */
+    IndexedColors(int width, int height, int[] palette) {
+        this.width = width;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.palette = palette;
+        foregroundIndices = new byte[width * height];
+        backgroundIndices = new byte[width * height];
+        indexedForegrounds = new long[wordsPerRow * height];
+        indexedBackgrounds = new long[wordsPerRow * height];
+        stale = new long[wordsPerRow * height];
+    }
+
+    /**
+     * Records the palette indices of a cell that was just written with their current colors.
+     */
+    void set(int x, int y, int foregroundIndex, int backgroundIndex) {
+        int i = y * width + x;
+        int w = y * wordsPerRow + (x >>> 6);
+        foregroundIndices[i] = (byte) foregroundIndex;
+        backgroundIndices[i] = (byte) backgroundIndex;
+        indexedForegrounds[w] |= 1L << x;
+        indexedBackgrounds[w] |= 1L << x;
+        stale[w] &= ~(1L << x);
+    }
+
+    /**
+     * Forgets the palette indices of a cell.
+     */
+    void clear(int x, int y) {
+        clearWord(y * wordsPerRow + (x >>> 6), 1L << x);
+    }
+
+    /**
+     * Forgets the palette indices of a section of cells.
+     */
+    void clear(int x, int y, int width, int height) {
+        if (width < 1 || height < 1)
+            return;
+
+        int firstWord = x >>> 6;
+        int lastWord = (x + width - 1) >>> 6;
+        long firstMask = -1L << x;
+        long lastMask = -1L >>> (63 - ((x + width - 1) & 63));
+
+        for (int yo = y; yo < y + height; yo++) {
+            int row = yo * wordsPerRow;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long mask = -1L;
+                if (w == firstWord)
+                    mask &= firstMask;
+                if (w == lastWord)
+                    mask &= lastMask;
+                clearWord(row + w, mask);
+            }
+        }
+    }
+
+    /**
+     * Forgets the palette indices of the cells set in one word of a bitset laid out like these.
+     */
+    void clearWord(int w, long bits) {
+        indexedForegrounds[w] &= ~bits;
+        indexedBackgrounds[w] &= ~bits;
+        stale[w] &= ~bits;
+    }
+
+    /**
+     * Gets the foreground palette index of a cell, or -1 if it was not written with one.
+     */
+    int getForegroundIndex(int x, int y) {
+        return (indexedForegrounds[y * wordsPerRow + (x >>> 6)] & 1L << x) == 0 ? -1 : foregroundIndices[y * width + x] & 0xff;
+    }
+
+    /**
+     * Gets the background palette index of a cell, or -1 if it was not written with one.
+     */
+    int getBackgroundIndex(int x, int y) {
+        return (indexedBackgrounds[y * wordsPerRow + (x >>> 6)] & 1L << x) == 0 ? -1 : backgroundIndices[y * width + x] & 0xff;
+    }
+
+    /**
+     * Gets the current foreground color of a cell, given the color it holds.
+     */
+    int foreground(int x, int y, int stored) {
+        int w = y * wordsPerRow + (x >>> 6);
+        if ((stale[w] & indexedForegrounds[w] & 1L << x) == 0)
+            return stored;
+
+        return palette[foregroundIndices[y * width + x] & 0xff];
+    }
+
+    /**
+     * Gets the current background color of a cell, given the color it holds.
+     */
+    int background(int x, int y, int stored) {
+        int w = y * wordsPerRow + (x >>> 6);
+        if ((stale[w] & indexedBackgrounds[w] & 1L << x) == 0)
+            return stored;
+
+        return palette[backgroundIndices[y * width + x] & 0xff];
+    }
+
+    /**
+     * Marks every cell using a palette entry that changed as stale and dirty, leaving its colors as
+     * they are until <code>resolve</code>.
+     * @param changed a bitset of the entries that changed
+     * @return true if any cell uses a changed entry
+     */
+    boolean paletteChanged(CellBuffer cells, long[] changed) {
+        boolean any = false;
+
+        for (int w = 0; w < indexedForegrounds.length; w++) {
+            long bits = indexedForegrounds[w] | indexedBackgrounds[w];
+            while (bits != 0) {
+                long bit = bits & -bits;
+                int x = ((w % wordsPerRow) << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                int i = w / wordsPerRow * width + x;
+                if ((indexedForegrounds[w] & bit) != 0 && isSet(changed, foregroundIndices[i] & 0xff)
+                        || (indexedBackgrounds[w] & bit) != 0 && isSet(changed, backgroundIndices[i] & 0xff)) {
+                    stale[w] |= bit;
+                    cells.markDirty(x, w / wordsPerRow);
+                    any = true;
+                }
+            }
+        }
+
+        anyStale |= any;
+        return any;
+    }
+
+    private static boolean isSet(long[] bits, int index) {
+        return (bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * Gives every stale cell the palette's current colors for its indices. Does nothing if no entry
+     * in use has changed since the last call.
+     */
+    void resolve(CellBuffer cells) {
+        if (!anyStale)
+            return;
+
+        anyStale = false;
+        for (int w = 0; w < stale.length; w++) {
+            long bits = stale[w];
+            if (bits == 0)
+                continue;
+
+            stale[w] = 0;
+            int y = w / wordsPerRow;
+            while (bits != 0) {
+                long bit = bits & -bits;
+                int x = ((w % wordsPerRow) << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+
+                int i = y * width + x;
+                int foreground = cells.foregrounds[i];
+                if ((indexedForegrounds[w] & bit) != 0)
+                    foreground = palette[foregroundIndices[i] & 0xff];
+
+                int background = cells.backgrounds[i];
+                if ((indexedBackgrounds[w] & bit) != 0)
+                    background = palette[backgroundIndices[i] & 0xff];
+
+                cells.recolor(x, y, foreground, background);
+            }
+        }
+    }
+
+    /**
+     * Moves the indices of a section by an offset, like <code>CellBuffer.shift</code> moves its
+     * cells, leaving the exposed strip as it was. Stale cells must have been resolved first.
+     */
+    void shift(int x, int y, int width, int height, int dx, int dy) {
+        for (int r = 0; r < height; r++) {
+            int toY = dy > 0 ? y + height - 1 - r : y + r;
+            int fromY = toY - dy;
+            if (fromY < y || fromY >= y + height)
+                continue;
+
+            for (int c = 0; c < width; c++) {
+                int toX = dx > 0 ? x + width - 1 - c : x + c;
+                int fromX = toX - dx;
+                if (fromX < x || fromX >= x + width)
+                    continue;
+
+                int from = fromY * this.width + fromX;
+                int to = toY * this.width + toX;
+                foregroundIndices[to] = foregroundIndices[from];
+                backgroundIndices[to] = backgroundIndices[from];
+                copyBit(indexedForegrounds, fromX, fromY, toX, toY);
+                copyBit(indexedBackgrounds, fromX, fromY, toX, toY);
+            }
+        }
+    }
+
+    private void copyBit(long[] bits, int fromX, int fromY, int toX, int toY) {
+        int to = toY * wordsPerRow + (toX >>> 6);
+        if ((bits[fromY * wordsPerRow + (fromX >>> 6)] & 1L << fromX) != 0)
+            bits[to] |= 1L << toX;
+        else
+            bits[to] &= ~(1L << toX);
+    }
+}
@@ -0,0 +1,15 @@
+package asciiPanel;
+
+/**
+ * Receives the measurements of every frame an AsciiPanel paints. Register one with
+ * <code>AsciiPanel.addRenderListener</code>; while no listener is registered nothing is measured.
+ */
+public interface RenderListener {
+
+    /**
+     * Called on the painting thread after each paint.
+     * @param stats the frame's measurements, which are reused for the next frame and must be copied
+     *              if they are kept
+     */
+    void frameRendered(FrameStats stats);
+}
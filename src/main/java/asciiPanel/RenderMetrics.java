@@ -0,0 +1,209 @@
+package asciiPanel;
+
+import java.util.Arrays;
+
+/**
+ * A RenderListener that adds up the measurements of every frame: totals of cells, pixels, glyph
+ * cache lookups and allocated bytes, and a histogram of paint durations. It is what
+ * <code>AsciiPanel.registerMBean</code> publishes over JMX, and can also be registered as a plain
+ * listener and read directly.
+ * <p>
+ * Frames are added on the painting thread while the getters may be called from any thread, such as
+ * a JMX connector's, so every method is synchronized.
+ */
+public class RenderMetrics implements RenderListener, RenderMetricsMBean {
+
+    private static final long[] HISTOGRAM_BOUNDS_MICROS = { 250, 500, 1000, 2000, 4000, 8000, 16000, 33000, 66000 };
+
+    private long frameCount;
+    private long totalPaintNanos;
+    private long maxPaintNanos;
+    private final long[] paintHistogram = new long[HISTOGRAM_BOUNDS_MICROS.length + 1];
+    private long cellsScanned;
+    private long cellsRedrawn;
+    private long pixelsBlitted;
+    private long glyphCacheHits;
+    private long glyphCacheMisses;
+    private long bytesAllocated;
+    private long allocationFrames;
+
+    public synchronized void frameRendered(FrameStats stats) {
+        frameCount++;
+        totalPaintNanos += stats.getPaintNanos();
+        maxPaintNanos = Math.max(maxPaintNanos, stats.getPaintNanos());
+        paintHistogram[bucket(stats.getPaintNanos() / 1000)]++;
+        cellsScanned += stats.getCellsScanned();
+        cellsRedrawn += stats.getCellsRedrawn();
+        pixelsBlitted += stats.getPixelsBlitted();
+        glyphCacheHits += stats.getGlyphCacheHits();
+        glyphCacheMisses += stats.getGlyphCacheMisses();
+        if (stats.getBytesAllocated() >= 0) {
+            bytesAllocated += stats.getBytesAllocated();
+            allocationFrames++;
+        }
+    }
+
+    private static int bucket(long micros) {
+        int i = 0;
+        while (i < HISTOGRAM_BOUNDS_MICROS.length && micros >= HISTOGRAM_BOUNDS_MICROS[i])
+            i++;
+        return i;
+    }
+
+    /**
+     * Gets the number of frames painted.
+     * @return
+     */
+    public synchronized long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the total time spent painting, in nanoseconds.
+     * @return
+     */
+    public synchronized long getTotalPaintNanos() {
+        return totalPaintNanos;
+    }
+
+    /**
+     * Gets the longest paint, in nanoseconds.
+     * @return
+     */
+    public synchronized long getMaxPaintNanos() {
+        return maxPaintNanos;
+    }
+
+    /**
+     * Gets the average paint duration in milliseconds, or 0 if nothing was painted.
+     * @return
+     */
+    public synchronized double getMeanPaintMillis() {
+        return frameCount == 0 ? 0 : totalPaintNanos / 1e6 / frameCount;
+    }
+
+    /**
+     * Gets the exclusive upper bounds, in microseconds, of every histogram bucket but the last,
+     * which holds everything slower.
+     * @return
+     */
+    public long[] getPaintHistogramBoundsMicros() {
+        return HISTOGRAM_BOUNDS_MICROS.clone();
+    }
+
+    /**
+     * Gets how many paints fell into each bucket of <code>getPaintHistogramBoundsMicros()</code>.
+     * @return
+     */
+    public synchronized long[] getPaintHistogram() {
+        return paintHistogram.clone();
+    }
+
+    /**
+     * Gets the number of dirty cells the renderer looked at, over every frame.
+     * @return
+     */
+    public synchronized long getCellsScanned() {
+        return cellsScanned;
+    }
+
+    /**
+     * Gets the number of cells actually drawn, over every frame.
+     * @return
+     */
+    public synchronized long getCellsRedrawn() {
+        return cellsRedrawn;
+    }
+
+    /**
+     * Gets the average number of cells drawn per frame, or 0 if nothing was painted.
+     * @return
+     */
+    public synchronized double getMeanCellsRedrawnPerFrame() {
+        return frameCount == 0 ? 0 : (double) cellsRedrawn / frameCount;
+    }
+
+    /**
+     * Gets the number of pixels copied to the screen, over every frame.
+     * @return
+     */
+    public synchronized long getPixelsBlitted() {
+        return pixelsBlitted;
+    }
+
+    /**
+     * Gets the number of colored glyphs found in the glyph cache.
+     * @return
+     */
+    public synchronized long getGlyphCacheHits() {
+        return glyphCacheHits;
+    }
+
+    /**
+     * Gets the number of colored glyphs that had to be created.
+     * @return
+     */
+    public synchronized long getGlyphCacheMisses() {
+        return glyphCacheMisses;
+    }
+
+    /**
+     * Gets the fraction of glyph cache lookups that were hits, or 0 if there were none.
+     * Only the <code>LOOKUP_OP</code> render mode uses the cache.
+     * @return
+     */
+    public synchronized double getGlyphCacheHitRate() {
+        long lookups = glyphCacheHits + glyphCacheMisses;
+        return lookups == 0 ? 0 : (double) glyphCacheHits / lookups;
+    }
+
+    /**
+     * Gets the bytes allocated while painting, over every frame where the JVM reported it.
+     * @return
+     */
+    public synchronized long getBytesAllocated() {
+        return bytesAllocated;
+    }
+
+    /**
+     * Gets the average bytes allocated per paint, or -1 if the JVM never reported it.
+     * @return
+     */
+    public synchronized double getMeanBytesAllocatedPerFrame() {
+        return allocationFrames == 0 ? -1 : (double) bytesAllocated / allocationFrames;
+    }
+
+    /**
+     * Gets the number of fonts loaded by this process. Fonts are shared, so this is not per panel.
+     * @return
+     */
+    public long getGlyphLoadCount() {
+        return GlyphAtlas.getLoadCount();
+    }
+
+    /**
+     * Gets the time this process spent loading fonts, in nanoseconds. Fonts are shared, so this is
+     * not per panel.
+     * @return
+     */
+    public long getGlyphLoadNanos() {
+        return GlyphAtlas.getLoadNanos();
+    }
+
+    /**
+     * Sets every per-frame total back to 0.
+     */
+    public synchronized void reset() {
+        frameCount = 0;
+        totalPaintNanos = 0;
+        maxPaintNanos = 0;
+        Arrays.fill(paintHistogram, 0);
+        cellsScanned = 0;
+        cellsRedrawn = 0;
+        pixelsBlitted = 0;
+        glyphCacheHits = 0;
+        glyphCacheMisses = 0;
+        bytesAllocated = 0;
+        allocationFrames = 0;
+    }
+}
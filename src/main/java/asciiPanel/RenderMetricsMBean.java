@@ -0,0 +1,43 @@
+package asciiPanel;
+
+/**
+ * The JMX management interface of RenderMetrics.
+ */
+public interface RenderMetricsMBean {
+
+    long getFrameCount();
+
+    long getTotalPaintNanos();
+
+    long getMaxPaintNanos();
+
+    double getMeanPaintMillis();
+
+    long[] getPaintHistogramBoundsMicros();
+
+    long[] getPaintHistogram();
+
+    long getCellsScanned();
+
+    long getCellsRedrawn();
+
+    double getMeanCellsRedrawnPerFrame();
+
+    long getPixelsBlitted();
+
+    long getGlyphCacheHits();
+
+    long getGlyphCacheMisses();
+
+    double getGlyphCacheHitRate();
+
+    long getBytesAllocated();
+
+    double getMeanBytesAllocatedPerFrame();
+
+    long getGlyphLoadCount();
+
+    long getGlyphLoadNanos();
+
+    void reset();
+}
@@ -0,0 +1,19 @@
+package asciiPanel;
+
+/**
+ * The ways an AsciiPanel can rasterize its characters into the offscreen buffer.
+ */
+public enum RenderMode {
+    /**
+     * Colors each glyph image with a <code>LookupOp</code> and draws it with <code>Graphics.drawImage</code>.
+     * Colored glyphs are reused through the panel's <code>ColorizedGlyphCache</code>.
+     */
+    LOOKUP_OP,
+
+    /**
+     * Writes foreground and background pixels straight into the offscreen buffer's <code>int[]</code>
+     * from precomputed glyph masks, without allocating or calling <code>Graphics</code> per cell.
+     * Colors are treated as opaque.
+     */
+    RASTER
+}
@@ -0,0 +1,318 @@
+package asciiPanel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Plays back a recording made by SessionRecorder into a CellBuffer, as fast as the caller asks for
+ * frames. The file is read through memory-mapped windows rather than loaded, so hours-long sessions
+ * only cost a small index of frame offsets in the heap.
+ * <p>
+ * Each call to <code>next()</code> or <code>seek</code> updates <code>getCells()</code> and marks the
+ * cells that changed dirty. To show a recording, copy those cells into a panel or renderer, for example
+ * <code>panel.writeBlock(player.getCells(), 0, 0, 0, 0, width, height)</code> or
+ * <code>renderer.getCells().copyFrom(player.getCells(), 0, 0, 0, 0, width, height)</code>, and pace the
+ * calls with <code>getFrameTime</code> if it should run in real time.
+ * <p>
+ * This class is not thread safe.
+ */
+public class SessionPlayer implements Closeable {
+    private static final int HEADER_SIZE = 13;
+    private static final int FRAME_HEADER_SIZE = 13;
+    private static final int WINDOW_SIZE = 1 << 24;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int width;
+    private final int height;
+    private final CellBuffer cells;
+    private long[] offsets = new long[256];
+    private long[] times = new long[256];
+    private int[] lengths = new int[256];
+    private boolean[] keyframes = new boolean[256];
+    private int frameCount;
+    private int frame = -1;
+    private int[] palette = new int[64];
+    private int paletteSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+
+    /**
+     * Class constructor opening a recording and indexing its frames.
+     * @param recording the file written by a SessionRecorder
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public SessionPlayer(File recording) throws IOException {
+        file = new RandomAccessFile(recording, "r");
+        try {
+            channel = file.getChannel();
+            fileSize = channel.size();
+            if (fileSize < HEADER_SIZE)
+                throw new IOException(recording + " is not a session recording.");
+
+            ByteBuffer header = map(0, HEADER_SIZE);
+            if (header.getInt() != SessionRecorder.MAGIC)
+                throw new IOException(recording + " is not a session recording.");
+            if (header.get() != SessionRecorder.VERSION)
+                throw new IOException(recording + " was recorded in an unsupported format.");
+
+            width = header.getInt();
+            height = header.getInt();
+            if (width < 1 || height < 1)
+                throw new IOException(recording + " has an invalid size of " + width + "x" + height + ".");
+
+            cells = new CellBuffer(width, height);
+            index();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the width in characters of the recording.
+     * @return
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height in characters of the recording.
+     * @return
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of complete frames in the recording.
+     * @return
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets when a frame was recorded, in milliseconds since recording started.
+     * @param frame
+     * @return
+     */
+    public long getFrameTime(int frame) {
+        checkFrame(frame);
+        return times[frame];
+    }
+
+    /**
+     * Returns true if a frame is a keyframe, which seeking can start decoding from.
+     * @param frame
+     * @return
+     */
+    public boolean isKeyframe(int frame) {
+        checkFrame(frame);
+        return keyframes[frame];
+    }
+
+    /**
+     * Gets the index of the frame currently in <code>getCells()</code>, or -1 before the first frame.
+     * @return
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Gets the cells of the current frame. Cells changed by playback are marked dirty; clearing
+     * that is up to the caller.
+     * @return
+     */
+    public CellBuffer getCells() {
+        return cells;
+    }
+
+    /**
+     * Advances to the next frame.
+     * @return false if the recording has no more frames
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        if (frame + 1 >= frameCount)
+            return false;
+
+        apply(frame + 1);
+        return true;
+    }
+
+    /**
+     * Jumps to a frame, decoding forward from the closest keyframe at or before it, or from the
+     * current frame if that is closer.
+     * @param target the index of the frame to show
+     * @throws IOException
+     */
+    public void seek(int target) throws IOException {
+        checkFrame(target);
+
+        int keyframe = target;
+        while (!keyframes[keyframe])
+            keyframe--;
+
+        int from = frame >= keyframe && frame < target ? frame + 1 : keyframe;
+        for (int i = from; i <= target; i++)
+            apply(i);
+    }
+
+    /**
+     * Closes the recording.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        window = null;
+        file.close();
+    }
+
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= frameCount)
+            throw new IllegalArgumentException("frame " + frame + " must be within range [0," + frameCount + ")." );
+    }
+
+    /**
+     * Records the offset of every complete frame. A truncated frame at the end is left out.
+     */
+    private void index() throws IOException {
+        long offset = HEADER_SIZE;
+        while (offset + FRAME_HEADER_SIZE <= fileSize) {
+            ByteBuffer header = map(offset, FRAME_HEADER_SIZE);
+            int type = header.get();
+            long time = header.getLong();
+            int length = header.getInt();
+
+            if (type != SessionRecorder.KEYFRAME && type != SessionRecorder.DELTA || length < 0)
+                throw new IOException("corrupt frame at offset " + offset + ".");
+
+            if (offset + FRAME_HEADER_SIZE + length > fileSize)
+                break;
+
+            if (frameCount == 0 && type != SessionRecorder.KEYFRAME)
+                throw new IOException("the recording does not start with a keyframe.");
+
+            if (frameCount == offsets.length) {
+                int capacity = frameCount * 2;
+                offsets = Arrays.copyOf(offsets, capacity);
+                times = Arrays.copyOf(times, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                keyframes = Arrays.copyOf(keyframes, capacity);
+            }
+
+            offsets[frameCount] = offset + FRAME_HEADER_SIZE;
+            times[frameCount] = time;
+            lengths[frameCount] = length;
+            keyframes[frameCount] = type == SessionRecorder.KEYFRAME;
+            frameCount++;
+
+            offset += FRAME_HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * Decodes a frame into the cells. Anything in it that does not fit this recording, such as a row
+     * or run outside the grid or an undefined color, is reported as a corrupt frame.
+     */
+    private void apply(int index) throws IOException {
+        ByteBuffer payload = map(offsets[index], lengths[index]);
+
+        if (keyframes[index])
+            paletteSize = 0;
+
+        int colors = readVarInt(payload);
+        if (colors < 0 || colors > payload.remaining() / 4)
+            throw corrupt(index);
+        if (paletteSize + colors > palette.length)
+            palette = Arrays.copyOf(palette, Math.max(palette.length * 2, paletteSize + colors));
+        for (int i = 0; i < colors; i++)
+            palette[paletteSize++] = payload.getInt();
+
+        int row;
+        while ((row = readVarInt(payload)) != 0) {
+            int y = row - 1;
+            if (y < 0 || y >= height)
+                throw corrupt(index);
+
+            int x = 0;
+            while (true) {
+                int skip = readVarInt(payload);
+                int length = readVarInt(payload);
+                if (length == 0)
+                    break;
+
+                if (skip < 0 || length < 0 || skip > width - x || length > width - x - skip)
+                    throw corrupt(index);
+
+                x += skip;
+                int glyph = readVarInt(payload);
+                if (glyph < 0 || glyph > Character.MAX_VALUE)
+                    throw corrupt(index);
+
+                int foreground = paletteColor(index, readVarInt(payload));
+                int background = paletteColor(index, readVarInt(payload));
+                cells.fill(x, y, length, 1, (char) glyph, foreground, background);
+                x += length;
+            }
+        }
+
+        frame = index;
+    }
+
+    private int paletteColor(int frame, int index) throws IOException {
+        if (index < 0 || index >= paletteSize)
+            throw corrupt(frame);
+
+        return palette[index];
+    }
+
+    private IOException corrupt(int frame) {
+        return new IOException("corrupt frame at offset " + (offsets[frame] - FRAME_HEADER_SIZE) + ".");
+    }
+
+    /**
+     * Gets a buffer positioned at the start of a range of the file, mapping a new window if the
+     * current one does not cover it.
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowEnd) {
+            long size = Math.min(Math.max(WINDOW_SIZE, length), fileSize - offset);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            windowStart = offset;
+            windowEnd = offset + size;
+        }
+
+        ByteBuffer buffer = window.duplicate();
+        buffer.position((int) (offset - windowStart));
+        buffer.limit((int) (offset - windowStart) + length);
+        return buffer;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining())
+                throw new IOException("frame ends in the middle of a value.");
+
+            int b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("malformed value in frame.");
+    }
+}
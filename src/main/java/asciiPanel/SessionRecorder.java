@@ -0,0 +1,443 @@
+package asciiPanel;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Records every frame a renderer or panel displays as compact cell-level deltas, for bug reports and
+ * replays without capturing video. Attach it with <code>AsciiRenderer.setSessionRecorder</code> or
+ * <code>AsciiPanel.setSessionRecorder</code>; each render that has dirty cells then appends one frame
+ * holding only the cells that actually changed. Play a recording back with SessionPlayer.
+ * <p>
+ * The file is only ever appended to. It starts with the magic bytes <code>ASES</code>, a version byte
+ * and the width and height in characters. Each frame that follows is a type byte (keyframe or delta),
+ * the milliseconds since recording started as a long and the payload length as an int, all
+ * big-endian, then the payload. The payload starts with the number of colors first used by the frame
+ * and those colors as packed ARGB ints, which extend a palette table, followed by the changed rows.
+ * Each row is its index plus one, then its runs of identical cells: the number of cells skipped since the previous run, the run length, the character
+ * and the palette indexes of both colors. A run of length 0 ends the row and a row index of 0 ends the
+ * frame. All numbers in the payload are unsigned LEB128 varints.
+ * <p>
+ * Keyframes hold every cell and start a new palette, so a player can seek to one without reading what
+ * came before. A frame cut short by a crash is simply ignored on playback.
+ * <p>
+ * This class is not thread safe; it is meant to be used from the thread that renders.
+ */
+public class SessionRecorder implements Closeable {
+
+    /**
+     * The number of frames between keyframes when no interval is specified.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 600;
+
+    static final int MAGIC = 0x41534553;
+    static final int VERSION = 1;
+    static final int KEYFRAME = 1;
+    static final int DELTA = 2;
+
+    private final int width;
+    private final int height;
+    private final DataOutputStream out;
+    private final CellBuffer shadow;
+    private final ColorTable palette = new ColorTable();
+    private final ByteSink header = new ByteSink();
+    private final ByteSink colors = new ByteSink();
+    private final ByteSink rows = new ByteSink();
+    private final int[] runX;
+    private final int[] runLength;
+    private final long start;
+    private int keyframeInterval = DEFAULT_KEYFRAME_INTERVAL;
+    private int framesSinceKeyframe;
+    private long frameCount;
+    private boolean started;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * Class constructor creating, or truncating, the file to record to.
+     * @param file   the file to write
+     * @param width  the width in characters of what is recorded
+     * @param height the height in characters of what is recorded
+     * @throws IOException
+     */
+    public SessionRecorder(File file, int width, int height) throws IOException {
+        if (width < 1)
+            throw new IllegalArgumentException("width " + width + " must be greater than 0." );
+
+        if (height < 1)
+            throw new IllegalArgumentException("height " + height + " must be greater than 0." );
+
+        this.width = width;
+        this.height = height;
+        this.shadow = new CellBuffer(width, height);
+        this.runX = new int[width];
+        this.runLength = new int[width];
+        this.start = System.nanoTime();
+
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(width);
+        out.writeInt(height);
+    }
+
+    /**
+     * Gets the width in characters of what is recorded.
+     * @return
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height in characters of what is recorded.
+     * @return
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the number of frames between keyframes.
+     * @return
+     */
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Sets the number of frames between keyframes. Shorter intervals make seeking faster and files larger.
+     * @param keyframeInterval
+     */
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1)
+            throw new IllegalArgumentException("keyframeInterval " + keyframeInterval + " must be greater than 0." );
+
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Gets the number of frames recorded so far.
+     * @return
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Gets the error that stopped recording, or null if recording is working.
+     * @return
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Writes any buffered frames to the file.
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        if (failure != null)
+            throw failure;
+
+        out.flush();
+    }
+
+    /**
+     * Finishes the recording and closes the file.
+     * @throws IOException if recording failed or the file could not be closed
+     */
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        }
+
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Appends a frame for the dirty cells of a buffer, which must be the size of this recording.
+     * Dirty cells that have not changed since the previous frame are left out, and nothing is
+     * written if no cell changed. Dirty state is not touched. After an I/O error this does nothing.
+     * @param cells
+     */
+    void capture(CellBuffer cells) {
+        if (closed || failure != null)
+            return;
+
+        try {
+            if (!started || framesSinceKeyframe >= keyframeInterval) {
+                writeKeyframe(cells);
+                started = true;
+                framesSinceKeyframe = 0;
+            } else if (cells.hasDirty()) {
+                writeDelta(cells);
+            }
+        } catch (IOException e) {
+            failure = e;
+            System.err.println("SessionRecorder: " + e.getMessage());
+        }
+    }
+
+    private void writeKeyframe(CellBuffer cells) throws IOException {
+        palette.clear();
+        colors.reset();
+        rows.reset();
+
+        for (int y = 0; y < height; y++) {
+            runX[0] = 0;
+            runLength[0] = width;
+            writeRow(cells, y, 1);
+        }
+        rows.writeVarInt(0);
+
+        shadow.copyFrom(cells, 0, 0, 0, 0, width, height);
+        writeFrame(KEYFRAME);
+    }
+
+    private void writeDelta(CellBuffer cells) throws IOException {
+        colors.reset();
+        rows.reset();
+
+        char[] glyphs = cells.glyphs;
+        int[] foregrounds = cells.foregrounds;
+        int[] backgrounds = cells.backgrounds;
+        char[] shadowGlyphs = shadow.glyphs;
+        int[] shadowForegrounds = shadow.foregrounds;
+        int[] shadowBackgrounds = shadow.backgrounds;
+        long[] dirty = cells.dirty;
+        int wordsPerRow = cells.wordsPerRow;
+        int firstWord = cells.dirtyLeft >>> 6;
+        int lastWord = (cells.dirtyRight - 1) >>> 6;
+        boolean changed = false;
+
+        for (int y = cells.dirtyTop; y < cells.dirtyBottom; y++) {
+            int runs = 0;
+            int row = y * wordsPerRow;
+            for (int w = firstWord; w <= lastWord; w++) {
+                long bits = dirty[row + w];
+                while (bits != 0) {
+                    int x = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+
+                    int i = y * width + x;
+                    if (glyphs[i] == shadowGlyphs[i]
+                            && foregrounds[i] == shadowForegrounds[i]
+                            && backgrounds[i] == shadowBackgrounds[i])
+                        continue;
+
+                    shadowGlyphs[i] = glyphs[i];
+                    shadowForegrounds[i] = foregrounds[i];
+                    shadowBackgrounds[i] = backgrounds[i];
+
+                    // split into runs of changed cells here; writeRow splits them further by value
+                    if (runs > 0 && runX[runs - 1] + runLength[runs - 1] == x) {
+                        runLength[runs - 1]++;
+                    } else {
+                        runX[runs] = x;
+                        runLength[runs] = 1;
+                        runs++;
+                    }
+                }
+            }
+
+            if (runs > 0) {
+                writeRow(cells, y, runs);
+                changed = true;
+            }
+        }
+
+        if (!changed)
+            return;
+
+        rows.writeVarInt(0);
+        writeFrame(DELTA);
+        framesSinceKeyframe++;
+    }
+
+    /**
+     * Encodes one row from spans of cells, merging neighbouring cells with the same values into runs.
+     */
+    private void writeRow(CellBuffer cells, int y, int spans) {
+        char[] glyphs = cells.glyphs;
+        int[] foregrounds = cells.foregrounds;
+        int[] backgrounds = cells.backgrounds;
+        int base = y * width;
+        int end = 0;
+
+        rows.writeVarInt(y + 1);
+        for (int s = 0; s < spans; s++) {
+            int x = runX[s];
+            int spanEnd = x + runLength[s];
+            while (x < spanEnd) {
+                int i = base + x;
+                char glyph = glyphs[i];
+                int foreground = foregrounds[i];
+                int background = backgrounds[i];
+                int length = 1;
+                while (x + length < spanEnd
+                        && glyphs[i + length] == glyph
+                        && foregrounds[i + length] == foreground
+                        && backgrounds[i + length] == background)
+                    length++;
+
+                rows.writeVarInt(x - end);
+                rows.writeVarInt(length);
+                rows.writeVarInt(glyph);
+                rows.writeVarInt(paletteIndex(foreground));
+                rows.writeVarInt(paletteIndex(background));
+
+                x += length;
+                end = x;
+            }
+        }
+        rows.writeVarInt(0);
+        rows.writeVarInt(0);
+    }
+
+    private int paletteIndex(int color) {
+        int index = palette.indexOf(color);
+        if (index < 0) {
+            index = palette.add(color);
+            colors.writeInt(color);
+        }
+        return index;
+    }
+
+    private void writeFrame(int type) throws IOException {
+        header.reset();
+        header.writeVarInt(colors.size() / 4);
+
+        out.writeByte(type);
+        out.writeLong((System.nanoTime() - start) / 1000000L);
+        out.writeInt(header.size() + colors.size() + rows.size());
+        header.writeTo(out);
+        colors.writeTo(out);
+        rows.writeTo(out);
+        frameCount++;
+    }
+
+    /**
+     * The palette of the current keyframe interval: packed ARGB colors numbered in the order they were
+     * added, found by open addressing so that encoding a run does not box anything.
+     */
+    private static final class ColorTable {
+        private int[] colors = new int[64];
+        private int[] indexes = new int[64];
+        private int size;
+
+        ColorTable() {
+            Arrays.fill(indexes, -1);
+        }
+
+        void clear() {
+            Arrays.fill(indexes, -1);
+            size = 0;
+        }
+
+        /**
+         * Gets the index of a color, or -1 if it has not been added.
+         */
+        int indexOf(int color) {
+            int mask = colors.length - 1;
+            for (int slot = hash(color) & mask; indexes[slot] >= 0; slot = (slot + 1) & mask) {
+                if (colors[slot] == color)
+                    return indexes[slot];
+            }
+            return -1;
+        }
+
+        /**
+         * Adds a color that is not in the table yet.
+         * @return its index
+         */
+        int add(int color) {
+            if ((size + 1) * 2 > colors.length)
+                grow();
+
+            put(color, size);
+            return size++;
+        }
+
+        private void put(int color, int index) {
+            int mask = colors.length - 1;
+            int slot = hash(color) & mask;
+            while (indexes[slot] >= 0)
+                slot = (slot + 1) & mask;
+
+            colors[slot] = color;
+            indexes[slot] = index;
+        }
+
+        private void grow() {
+            int[] oldColors = colors;
+            int[] oldIndexes = indexes;
+            colors = new int[oldColors.length * 2];
+            indexes = new int[oldColors.length * 2];
+            Arrays.fill(indexes, -1);
+            for (int slot = 0; slot < oldColors.length; slot++) {
+                if (oldIndexes[slot] >= 0)
+                    put(oldColors[slot], oldIndexes[slot]);
+            }
+        }
+
+        private static int hash(int color) {
+            int h = color * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * A growable byte array for encoding a payload before its length is known.
+     */
+    private static final class ByteSink {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+
+        private void write(int b) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = (byte) b;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package asciiPanel;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads how many bytes the current thread has allocated, on JVMs that report it.
+ */
+final class ThreadAllocation {
+    private static final com.sun.management.ThreadMXBean threads = findThreadBean();
+
+    private ThreadAllocation() {}
+
+    /**
+     * Gets the bytes the current thread has allocated so far, or -1 if that is not available.
+     * @return
+     */
+    static long currentThreadAllocatedBytes() {
+        if (threads == null)
+            return -1;
+
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean))
+                return null;
+
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (!threads.isThreadAllocatedMemorySupported())
+                return null;
+
+            if (!threads.isThreadAllocatedMemoryEnabled())
+                threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        } catch (LinkageError e) {
+            return null;
+        } catch (UnsupportedOperationException e) {
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package asciiPanel;
+
+/**
+ * Shows the part of a ChunkedWorld under a camera on an AsciiPanel. The camera is the world position
+ * of the panel's top left cell, and may be partly or completely outside the world, where the world's
+ * default cell is shown.
+ * <p>
+ * Moving the camera scrolls what is already on the panel with <code>AsciiPanel.scroll</code> and only
+ * copies the newly exposed strips from the world, one block write per chunk they cross. A step of one
+ * tile across a 100 by 40 panel therefore copies and draws a single row or column instead of the
+ * whole view. After editing cells the camera can see, call <code>refresh</code> to show them.
+ */
+public class WorldViewport {
+    private final ChunkedWorld world;
+    private final AsciiPanel panel;
+    private int cameraX;
+    private int cameraY;
+
+    private final ChunkedWorld.RegionVisitor toPanel = new ChunkedWorld.RegionVisitor() {
+        public void chunk(char[] glyphs, int[] foregrounds, int[] backgrounds, int offset, int x, int y, int width, int height) {
+            panel.writeBlock(glyphs, foregrounds, backgrounds, offset, ChunkedWorld.CHUNK_SIZE, x, y, width, height);
+        }
+
+        public void fill(int x, int y, int width, int height, char glyph, int foreground, int background) {
+            panel.clear(glyph, x, y, width, height, foreground, background);
+        }
+    };
+
+    /**
+     * Class constructor binding a world to a panel with the camera at the world's top left corner.
+     * What the camera sees is copied onto the panel right away.
+     * @param world
+     * @param panel
+     */
+    public WorldViewport(ChunkedWorld world, AsciiPanel panel) {
+        if (world == null)
+            throw new NullPointerException("world must not be null.");
+
+        if (panel == null)
+            throw new NullPointerException("panel must not be null.");
+
+        this.world = world;
+        this.panel = panel;
+        refresh();
+    }
+
+    /**
+     * Gets the world shown.
+     * @return
+     */
+    public ChunkedWorld getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the panel the world is shown on.
+     * @return
+     */
+    public AsciiPanel getPanel() {
+        return panel;
+    }
+
+    /**
+     * Gets the world x position of the panel's left column.
+     * @return
+     */
+    public int getCameraX() {
+        return cameraX;
+    }
+
+    /**
+     * Gets the world y position of the panel's top row.
+     * @return
+     */
+    public int getCameraY() {
+        return cameraY;
+    }
+
+    /**
+     * Moves the camera so the panel's top left cell shows a world position.
+     * @param x the world x position of the panel's left column
+     * @param y the world y position of the panel's top row
+     */
+    public void setCamera(int x, int y) {
+        int dx = cameraX - x;
+        int dy = cameraY - y;
+        if (dx == 0 && dy == 0)
+            return;
+
+        cameraX = x;
+        cameraY = y;
+
+        int width = panel.getWidthInCharacters();
+        int height = panel.getHeightInCharacters();
+        if (Math.abs(dx) >= width || Math.abs(dy) >= height) {
+            copy(0, 0, width, height);
+            return;
+        }
+
+        panel.scroll(0, 0, width, height, dx, dy);
+
+        if (dy > 0)
+            copy(0, 0, width, dy);
+        else if (dy < 0)
+            copy(0, height + dy, width, -dy);
+
+        int top = Math.max(dy, 0);
+        int rows = height - Math.abs(dy);
+        if (dx > 0)
+            copy(0, top, dx, rows);
+        else if (dx < 0)
+            copy(width + dx, top, -dx, rows);
+    }
+
+    /**
+     * Moves the camera by an offset.
+     * @param dx how far to move right, negative to move left
+     * @param dy how far to move down, negative to move up
+     */
+    public void moveCamera(int dx, int dy) {
+        setCamera(cameraX + dx, cameraY + dy);
+    }
+
+    /**
+     * Copies everything the camera sees onto the panel again. This marks the whole panel dirty, so
+     * after editing a few cells prefer <code>refresh(x, y, width, height)</code>.
+     */
+    public void refresh() {
+        copy(0, 0, panel.getWidthInCharacters(), panel.getHeightInCharacters());
+    }
+
+    /**
+     * Copies the part of a section of the world the camera sees onto the panel again.
+     * @param x      the distance from the left of the world
+     * @param y      the distance from the top of the world
+     * @param width  the width of the section
+     * @param height the height of the section
+     */
+    public void refresh(int x, int y, int width, int height) {
+        int left = Math.max(x - cameraX, 0);
+        int top = Math.max(y - cameraY, 0);
+        int right = Math.min(x + width - cameraX, panel.getWidthInCharacters());
+        int bottom = Math.min(y + height - cameraY, panel.getHeightInCharacters());
+        if (left < right && top < bottom)
+            copy(left, top, right - left, bottom - top);
+    }
+
+    private void copy(int x, int y, int width, int height) {
+        world.forEachRegion(cameraX + x, cameraY + y, x, y, width, height, toPanel);
+    }
+}
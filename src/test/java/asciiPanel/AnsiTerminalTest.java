@@ -0,0 +1,244 @@
+package asciiPanel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AnsiTerminalTest {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * Replays the escape sequences AnsiTerminal emits onto a grid of characters and truecolor colors.
+   */
+  private static final class Screen {
+    final int width;
+    final char[] glyphs;
+    final int[] foregrounds;
+    final int[] backgrounds;
+    int x;
+    int y;
+    int foreground;
+    int background;
+
+    Screen(int width, int height) {
+      this.width = width;
+      glyphs = new char[width * height];
+      foregrounds = new int[width * height];
+      backgrounds = new int[width * height];
+    }
+
+    void play(String output) {
+      int i = 0;
+      while (i < output.length()) {
+        char c = output.charAt(i++);
+        if (c == '\r') {
+          x = 0;
+        } else if (c == '\n') {
+          y++;
+        } else if (c == '\u001b') {
+          assertEquals('[', output.charAt(i++));
+          int end = i;
+          while (!Character.isLetter(output.charAt(end)))
+            end++;
+          String params = output.substring(i, end);
+          char command = output.charAt(end);
+          i = end + 1;
+          command(command, params);
+        } else {
+          int at = y * width + Math.min(x, width - 1);
+          glyphs[at] = c;
+          foregrounds[at] = foreground;
+          backgrounds[at] = background;
+          x++;
+          if (x > width) {
+            x = 1;
+            y++;
+          }
+        }
+      }
+    }
+
+    private void command(char command, String params) {
+      String[] p = params.split(";");
+      if (command == 'H') {
+        y = Integer.parseInt(p[0]) - 1;
+        x = Integer.parseInt(p[1]) - 1;
+      } else if (command == 'C') {
+        x = Math.min(x, width - 1) + (params.isEmpty() ? 1 : Integer.parseInt(params));
+      } else if (command == 'D') {
+        x = Math.min(x, width - 1) - (params.isEmpty() ? 1 : Integer.parseInt(params));
+      } else if (command == 'm') {
+        for (int i = 0; i < p.length; i++) {
+          if (p[i].equals("38") || p[i].equals("48")) {
+            int color = 0xff000000 | Integer.parseInt(p[i + 2]) << 16 | Integer.parseInt(p[i + 3]) << 8 | Integer.parseInt(p[i + 4]);
+            if (p[i].equals("38"))
+              foreground = color;
+            else
+              background = color;
+            i += 4;
+          }
+        }
+      }
+    }
+
+    void assertShows(CellBuffer cells) {
+      for (int y = 0; y < cells.getHeight(); y++) {
+        for (int x = 0; x < cells.getWidth(); x++) {
+          int i = y * width + x;
+          String at = x + "," + y;
+          assertEquals(at, AnsiTerminal.toUnicode(cells.getCharacter(x, y)), glyphs[i]);
+          assertEquals(at, cells.getForeground(x, y), foregrounds[i]);
+          assertEquals(at, cells.getBackground(x, y), backgrounds[i]);
+        }
+      }
+    }
+  }
+
+  private static String drain(ByteArrayOutputStream out) throws Exception {
+    String text = new String(out.toByteArray(), UTF_8);
+    out.reset();
+    return text;
+  }
+
+  @Test
+  public void testUpdatesReproduceCells() throws Exception {
+    CellBuffer cells = new CellBuffer(30, 10);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AnsiTerminal terminal = new AnsiTerminal(out, 30, 10);
+    Screen screen = new Screen(30, 10);
+    Random random = new Random(17);
+    int[] colors = { 0xff000000, 0xffc0c0c0, 0xffff0000, 0xff0000ff };
+
+    cells.fill(0, 0, 30, 10, ' ', 0xffc0c0c0, 0xff000000);
+    for (int frame = 0; frame < 20; frame++) {
+      for (int i = 0; i < 15; i++) {
+        cells.set(random.nextInt(30), random.nextInt(10), (char) random.nextInt(256),
+            colors[random.nextInt(colors.length)], colors[random.nextInt(colors.length)]);
+      }
+      terminal.update(cells);
+      screen.play(drain(out));
+      screen.assertShows(cells);
+    }
+  }
+
+  @Test
+  public void testOnlyChangesAreSent() throws Exception {
+    CellBuffer cells = new CellBuffer(80, 24);
+    cells.fill(0, 0, 80, 24, '.', 0xffc0c0c0, 0xff000000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AnsiTerminal terminal = new AnsiTerminal(out, 80, 24);
+
+    terminal.update(cells);
+    assertTrue(drain(out).startsWith("\u001b[0m\u001b[?25l\u001b[2J"));
+
+    terminal.update(cells);
+    assertEquals(0, terminal.getLastUpdateBytes());
+
+    cells.set(10, 5, '@', 0xffc0c0c0, 0xff000000);
+    terminal.update(cells);
+    assertEquals("\u001b[6;11H@", drain(out));
+
+    cells.set(13, 5, '@', 0xffc0c0c0, 0xff000000);
+    terminal.update(cells);
+    assertEquals("..@", drain(out));
+
+    cells.set(0, 6, 'x', 0xffc0c0c0, 0xff000000);
+    terminal.update(cells);
+    assertEquals("\r\nx", drain(out));
+  }
+
+  @Test
+  public void testColorsAreOnlySentWhenTheyChange() throws Exception {
+    CellBuffer cells = new CellBuffer(4, 1);
+    cells.fill(0, 0, 4, 1, 'a', 0xffff0000, 0xff000000);
+    cells.set(3, 0, 'b', 0xffff0000, 0xff0000ff);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AnsiTerminal terminal = new AnsiTerminal(out, 4, 1);
+
+    terminal.update(cells);
+    String output = drain(out);
+    assertTrue(output.endsWith("\u001b[1;1H\u001b[38;2;255;0;0;48;2;0;0;0maaa\u001b[48;2;0;0;255mb"));
+  }
+
+  @Test
+  public void testPaletteModes() throws Exception {
+    CellBuffer cells = new CellBuffer(1, 1);
+    cells.set(0, 0, 'a', 0xffff0101, 0xff7f7f7f);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AnsiTerminal terminal = new AnsiTerminal(out, 1, 1);
+
+    terminal.setColorMode(AnsiColorMode.PALETTE_256);
+    terminal.update(cells);
+    assertTrue(drain(out).endsWith("\u001b[38;5;196;48;5;244ma"));
+
+    terminal.setColorMode(AnsiColorMode.PALETTE_16);
+    terminal.update(cells);
+    assertTrue(drain(out).endsWith("\u001b[91;100ma"));
+  }
+
+  @Test
+  public void testCodePage437IsSentAsUtf8() throws Exception {
+    CellBuffer cells = new CellBuffer(3, 1);
+    cells.set(0, 0, (char) 1, 0xffffffff, 0xff000000);
+    cells.set(1, 0, (char) 219, 0xffffffff, 0xff000000);
+    cells.set(2, 0, (char) 130, 0xffffffff, 0xff000000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new AnsiTerminal(Channels.newChannel(out), 3, 1).update(cells);
+    assertTrue(drain(out).endsWith("☺█é"));
+  }
+
+  @Test
+  public void testSurrogatePairIsSentAsOneCharacter() throws Exception {
+    CellBuffer cells = new CellBuffer(4, 1);
+    cells.fill(0, 0, 4, 1, ' ', 0xffffffff, 0xff000000);
+    cells.set(0, 0, '\ud83d', 0xffffffff, 0xff000000);
+    cells.set(1, 0, '\ude00', 0xffffffff, 0xff000000);
+    cells.set(2, 0, '\ude00', 0xffffffff, 0xff000000);
+    cells.set(3, 0, '\ud83d', 0xffffffff, 0xff000000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new AnsiTerminal(out, 4, 1).update(cells);
+    String sent = drain(out);
+    assertTrue(sent.contains("\ud83d\ude00"));
+    assertFalse(sent.contains("\ufffd"));
+    assertTrue(sent.endsWith("??"));
+  }
+
+  @Test
+  public void testChangedLowSurrogateResendsThePair() throws Exception {
+    CellBuffer cells = new CellBuffer(2, 1);
+    cells.set(0, 0, '\ud83d', 0xffffffff, 0xff000000);
+    cells.set(1, 0, '\ude00', 0xffffffff, 0xff000000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    AnsiTerminal terminal = new AnsiTerminal(out, 2, 1);
+    terminal.update(cells);
+    drain(out);
+
+    cells.set(1, 0, '\ude01', 0xffffffff, 0xff000000);
+    terminal.update(cells);
+    assertTrue(drain(out).endsWith("\ud83d\ude01"));
+  }
+
+  @Test( expected = NullPointerException.class )
+  public void testOutputStreamMustNotBeNull() {
+    new AnsiTerminal((OutputStream) null, 10, 4);
+  }
+
+  @Test( expected = NullPointerException.class )
+  public void testChannelMustNotBeNull() {
+    new AnsiTerminal((WritableByteChannel) null, 10, 4);
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testSizeMustMatch() throws Exception {
+    new AnsiTerminal(new ByteArrayOutputStream(), 10, 4).update(new CellBuffer(10, 5));
+  }
+}
@@ -0,0 +1,144 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsciiPaletteTest {
+
+  @Test
+  public void testStartsWithStandardColors() {
+    AsciiPalette palette = new AsciiPalette(20);
+    assertEquals(AsciiPanel.black.getRGB(), palette.get(0));
+    assertEquals(AsciiPanel.white.getRGB(), palette.get(7));
+    assertEquals(AsciiPanel.brightRed.getRGB(), palette.get(9));
+    assertEquals(AsciiPanel.brightWhite.getRGB(), palette.get(15));
+    assertEquals(0xff000000, palette.get(19));
+  }
+
+  @Test
+  public void testChangingAnEntryRecolorsItsCells() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    AsciiPalette palette = panel.getPalette();
+    palette.set(20, 0xff336699);
+    panel.writeIndexed("ab", 1, 1, 20, 0);
+    panel.writeIndexed('c', 3, 1, 9, 20);
+    panel.write('d', 4, 1, new Color(0xff336699), Color.black);
+    AsciiPanelRenderTest.render(panel);
+
+    palette.set(20, 0xff102030);
+
+    CellBuffer cells = panel.getCells();
+    assertTrue(cells.hasDirty());
+    assertEquals(0xff102030, cells.getForeground(1, 1));
+    assertEquals(0xff102030, cells.getForeground(2, 1));
+    assertEquals(0xff102030, cells.getBackground(3, 1));
+    assertEquals(palette.get(9), cells.getForeground(3, 1));
+    assertEquals(0xff336699, cells.getForeground(4, 1));
+    assertEquals('b', cells.getCharacter(2, 1));
+  }
+
+  @Test
+  public void testPaletteChangeOnlyMarksCellsUntilTheyAreDrawn() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    AsciiPalette palette = panel.getPalette();
+    panel.writeIndexed('a', 1, 1, 9, 0);
+    panel.writeIndexed('b', 2, 1, 10, 0);
+    int red = palette.get(9);
+    AsciiPanelRenderTest.render(panel);
+
+    palette.set(9, 0xff102030);
+    palette.set(9, 0xff405060);
+
+    CellBuffer cells = panel.getCells();
+    int i = cells.index(1, 1);
+    assertEquals(red, cells.foregrounds[i]);
+    assertTrue(cells.isDirty(1, 1));
+    assertFalse(cells.isDirty(2, 1));
+    assertEquals(0xff405060, cells.getForeground(1, 1));
+
+    BufferedImage image = AsciiPanelRenderTest.render(panel);
+    assertEquals(0xff405060, cells.foregrounds[i]);
+    assertEquals(9, cells.indexedColors.getForegroundIndex(1, 1));
+    boolean drawn = false;
+    for (int y = 8; y < 16; y++) {
+      for (int x = 8; x < 16; x++)
+        drawn |= (image.getRGB(x, y) | 0xff000000) == 0xff405060;
+    }
+    assertTrue(drawn);
+  }
+
+  @Test
+  public void testDirectWriteStopsFollowingThePalette() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    AsciiPalette palette = panel.getPalette();
+    panel.writeIndexed('a', 1, 1, 9, 0);
+    panel.write('a', 1, 1, Color.green, Color.black);
+
+    palette.set(9, 0xff102030);
+    assertEquals(Color.green.getRGB(), panel.getCells().getForeground(1, 1));
+  }
+
+  @Test
+  public void testDirectWriteOfTheSameColorStopsFollowingThePalette() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    AsciiPalette palette = panel.getPalette();
+    panel.writeIndexed("abcd", 1, 1, 9, 0);
+    int red = palette.get(9);
+    panel.write('a', 1, 1, new Color(red), Color.black);
+    panel.getCells().set(2, 1, 'b', red, 0xff000000);
+    panel.getCells().fill(3, 1, 1, 1, 'c', red, 0xff000000);
+    panel.clear('d', 4, 1, 1, 1, new Color(red), Color.black);
+
+    palette.set(9, 0xff102030);
+    for (int x = 1; x <= 4; x++)
+      assertEquals(red, panel.getCells().getForeground(x, 1));
+  }
+
+  @Test
+  public void testScrollMovesIndices() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    AsciiPalette palette = panel.getPalette();
+    panel.writeIndexed('a', 1, 1, 9, 0);
+    panel.scroll(0, 0, 10, 4, 2, 1);
+
+    palette.set(9, 0xff102030);
+    assertEquals(0xff102030, panel.getCells().getForeground(3, 2));
+    assertEquals(palette.get(0), panel.getCells().getBackground(3, 2));
+  }
+
+  @Test
+  public void testCopyFromRecolorsEveryChangedEntry() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    panel.writeIndexed('a', 1, 1, 9, 0);
+    panel.writeIndexed('b', 2, 1, 10, 9);
+    panel.writeIndexed('c', 3, 1, 12, 12);
+    AsciiPalette night = new AsciiPalette(11);
+    night.set(9, 0xff102030);
+    night.set(10, 0xff405060);
+    night.set(0, 0xff010101);
+
+    panel.getPalette().copyFrom(night);
+
+    CellBuffer cells = panel.getCells();
+    assertEquals(0xff102030, cells.getForeground(1, 1));
+    assertEquals(0xff010101, cells.getBackground(1, 1));
+    assertEquals(0xff405060, cells.getForeground(2, 1));
+    assertEquals(0xff102030, cells.getBackground(2, 1));
+    assertEquals(AsciiPanel.brightBlue.getRGB(), cells.getForeground(3, 1));
+    assertEquals(0xff405060, panel.getPalette().get(10));
+    assertEquals(AsciiPanel.brightBlue.getRGB(), panel.getPalette().get(12));
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testIndexMustBeInPalette() {
+    new AsciiPanel(10, 4, AsciiFont.CP437_8x8).writeIndexed('a', 1, 1, 256, 0);
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testSizeMustFitInAByte() {
+    new AsciiPalette(257);
+  }
+}
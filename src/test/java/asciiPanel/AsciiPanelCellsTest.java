@@ -0,0 +1,119 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsciiPanelCellsTest {
+
+  @Test
+  public void testGetCharactersViewTracksWrites() {
+    AsciiPanel panel = new AsciiPanel(3, 2);
+    AsciiCharacterData[][] view = panel.getCharacters();
+    panel.write('a', 2, 1, AsciiPanel.red, AsciiPanel.blue);
+
+    assertEquals('a', view[2][1].character);
+    assertEquals(AsciiPanel.red, view[2][1].foregroundColor);
+    assertEquals(AsciiPanel.blue, view[2][1].backgroundColor);
+  }
+
+  @Test
+  public void testInPlaceEditThroughGetCharacters() {
+    AsciiPanel panel = new AsciiPanel(3, 2);
+    AsciiCharacterData data = panel.getCharacters()[1][0];
+    data.character = 'z';
+    data.foregroundColor = AsciiPanel.brightGreen;
+
+    panel.withEachTile(1, 0, 1, 1, new TileTransformer() {
+      public void transformTile(int x, int y, AsciiCharacterData tile) {
+        assertEquals('z', tile.character);
+        tile.backgroundColor = AsciiPanel.yellow;
+      }
+    });
+
+    CellBuffer cells = panel.getCells();
+    assertEquals('z', cells.getCharacter(1, 0));
+    assertEquals(AsciiPanel.brightGreen.getRGB(), cells.getForeground(1, 0));
+    assertEquals(AsciiPanel.yellow.getRGB(), cells.getBackground(1, 0));
+  }
+
+  @Test
+  public void testWithEachTilePassesOneDataPerTile() {
+    AsciiPanel panel = new AsciiPanel(3, 2);
+    final List<AsciiCharacterData> tiles = new ArrayList<AsciiCharacterData>();
+    panel.getCells().clearDirty();
+
+    panel.withEachTile(new TileTransformer() {
+      public void transformTile(int x, int y, AsciiCharacterData tile) {
+        tiles.add(tile);
+        tile.foregroundColor = new Color(tile.foregroundColor.getRGB(), true);
+      }
+    });
+
+    assertEquals(6, tiles.size());
+    assertNotSame(tiles.get(0), tiles.get(1));
+    assertFalse(panel.getCells().hasDirty());
+  }
+
+  @Test
+  public void testClearDoesNotMoveCursor() {
+    AsciiPanel panel = new AsciiPanel(4, 4);
+    panel.setCursorPosition(1, 2);
+    panel.clear('#', 0, 0, 4, 4);
+
+    assertEquals(1, panel.getCursorX());
+    assertEquals(2, panel.getCursorY());
+    assertEquals('#', panel.getCells().getCharacter(3, 3));
+  }
+
+  @Test
+  public void testWriteBlock() {
+    AsciiPanel panel = new AsciiPanel(6, 4);
+    char[] characters = { 'a', 'b', 'c', 'x', 'd', 'e', 'f', 'x' };
+    int[] foregrounds = { 1, 2, 3, 0, 4, 5, 6, 0 };
+    int[] backgrounds = { 7, 8, 9, 0, 10, 11, 12, 0 };
+    panel.setCursorPosition(0, 0);
+    panel.getCells().clearDirty();
+
+    panel.writeBlock(characters, foregrounds, backgrounds, 0, 4, 2, 1, 3, 2);
+
+    CellBuffer cells = panel.getCells();
+    assertEquals('a', cells.getCharacter(2, 1));
+    assertEquals('f', cells.getCharacter(4, 2));
+    assertEquals(5, cells.getForeground(3, 2));
+    assertEquals(9, cells.getBackground(4, 1));
+    assertEquals(' ', cells.getCharacter(5, 1));
+    assertEquals(6, cells.countDirty());
+    assertEquals(0, panel.getCursorX());
+    assertEquals('d', panel.getCharacters()[2][2].character);
+  }
+
+  @Test
+  public void testWriteBlockFromCellBuffer() {
+    CellBuffer source = new CellBuffer(10, 10);
+    source.fill(0, 0, 10, 10, '.', 1, 2);
+    source.set(4, 5, '@', 3, 4);
+
+    AsciiPanel panel = new AsciiPanel(3, 3);
+    panel.writeBlock(source, 3, 4, 0, 0, 3, 3);
+
+    assertEquals('@', panel.getCells().getCharacter(1, 1));
+    assertEquals(3, panel.getCells().getForeground(1, 1));
+    assertEquals('.', panel.getCells().getCharacter(2, 2));
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testWriteBlockOutsideOfMax() {
+    AsciiPanel panel = new AsciiPanel(3, 3);
+    panel.writeBlock(new char[16], new int[16], new int[16], 0, 4, 0, 0, 4, 4);
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testWriteBlockArraysTooShort() {
+    AsciiPanel panel = new AsciiPanel(3, 3);
+    panel.writeBlock(new char[8], new int[8], new int[8], 0, 3, 0, 0, 3, 3);
+  }
+}
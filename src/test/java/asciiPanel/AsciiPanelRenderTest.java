@@ -0,0 +1,308 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsciiPanelRenderTest {
+
+  private static void fillRandomly(AsciiPanel panel, long seed) {
+    Random random = new Random(seed);
+    for (int x = 0; x < panel.getWidthInCharacters(); x++) {
+      for (int y = 0; y < panel.getHeightInCharacters(); y++) {
+        Color fg = new Color(random.nextInt(0x1000000));
+        Color bg = new Color(random.nextInt(0x1000000));
+        panel.write((char) random.nextInt(256), x, y, fg, bg);
+      }
+    }
+  }
+
+  static BufferedImage render(AsciiPanel panel) {
+    BufferedImage image = new BufferedImage(
+        panel.getCharWidth() * panel.getWidthInCharacters(),
+        panel.getCharHeight() * panel.getHeightInCharacters(),
+        BufferedImage.TYPE_INT_RGB);
+    Graphics g = image.getGraphics();
+    panel.paint(g);
+    g.dispose();
+    return image;
+  }
+
+  static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testRasterMatchesLookupOp() {
+    for (AsciiFont font : new AsciiFont[] { AsciiFont.CP437_9x16, AsciiFont.CP437_8x8, AsciiFont.TALRYTH_15_15 }) {
+      AsciiPanel lookup = new AsciiPanel(20, 10, font);
+      AsciiPanel raster = new AsciiPanel(20, 10, font);
+      raster.setRenderMode(RenderMode.RASTER);
+      fillRandomly(lookup, 42);
+      fillRandomly(raster, 42);
+
+      assertSamePixels(render(lookup), render(raster));
+    }
+  }
+
+  @Test
+  public void testSwitchingModeRedrawsEverything() {
+    AsciiPanel panel = new AsciiPanel(10, 5);
+    fillRandomly(panel, 7);
+    BufferedImage expected = render(panel);
+
+    panel.setRenderMode(RenderMode.RASTER);
+    assertSamePixels(expected, render(panel));
+  }
+
+  @Test
+  public void testPartialRepaintMatchesFullRender() {
+    AsciiPanel panel = new AsciiPanel(12, 6);
+    fillRandomly(panel, 3);
+    BufferedImage image = render(panel);
+
+    panel.write("changed", 2, 3, AsciiPanel.brightRed, AsciiPanel.blue);
+    panel.write('!', 11, 0);
+    assertEquals(8, panel.getCells().countDirty());
+
+    Graphics g = image.getGraphics();
+    panel.paint(g);
+    g.dispose();
+    assertFalse(panel.getCells().hasDirty());
+
+    AsciiPanel fresh = new AsciiPanel(12, 6);
+    fillRandomly(fresh, 3);
+    fresh.write("changed", 2, 3, AsciiPanel.brightRed, AsciiPanel.blue);
+    fresh.write('!', 11, 0);
+    assertSamePixels(render(fresh), image);
+  }
+
+  @Test
+  public void testBlitIsLimitedToClip() {
+    AsciiPanel panel = new AsciiPanel(4, 4);
+    panel.clear(' ', AsciiPanel.white, AsciiPanel.brightBlue);
+    BufferedImage image = new BufferedImage(4 * panel.getCharWidth(), 4 * panel.getCharHeight(), BufferedImage.TYPE_INT_RGB);
+
+    Graphics g = image.getGraphics();
+    g.setClip(0, 0, panel.getCharWidth(), panel.getCharHeight());
+    panel.paint(g);
+    g.dispose();
+
+    assertEquals(AsciiPanel.brightBlue.getRGB(), image.getRGB(0, 0));
+    assertEquals(0xff000000, image.getRGB(image.getWidth() - 1, image.getHeight() - 1));
+  }
+
+  private static long glyphsDrawn(AsciiPanel panel) {
+    return panel.getGlyphCache().getHits() + panel.getGlyphCache().getMisses();
+  }
+
+  @Test
+  public void testInPlaceEditsAreRedrawn() {
+    AsciiPanel panel = new AsciiPanel(5, 5);
+    BufferedImage image = render(panel);
+
+    AsciiCharacterData[][] characters = panel.getCharacters();
+    characters[1][1].backgroundColor = AsciiPanel.brightRed;
+    Graphics g = image.getGraphics();
+    panel.paint(g);
+    g.dispose();
+
+    assertEquals(AsciiPanel.brightRed.getRGB(), image.getRGB(panel.getCharWidth() + 1, panel.getCharHeight() + 1));
+
+    panel.withEachTile(new TileTransformer() {
+      public void transformTile(int x, int y, AsciiCharacterData data) {
+        if (x == 3 && y == 4)
+          data.backgroundColor = AsciiPanel.brightGreen;
+      }
+    });
+    g = image.getGraphics();
+    panel.paint(g);
+    g.dispose();
+
+    assertEquals(AsciiPanel.brightGreen.getRGB(), image.getRGB(3 * panel.getCharWidth(), 4 * panel.getCharHeight()));
+  }
+
+  @Test
+  public void testEqualValuesAreNotRedrawn() {
+    AsciiPanel panel = new AsciiPanel(10, 4);
+    render(panel);
+    long drawn = glyphsDrawn(panel);
+
+    panel.write('a', 0, 0, new Color(AsciiPanel.white.getRGB()), new Color(AsciiPanel.black.getRGB()));
+    panel.write('a', 0, 0);
+    render(panel);
+    assertEquals(drawn + 1, glyphsDrawn(panel));
+
+    panel.clear();
+    panel.write('a', 0, 0);
+    assertTrue(panel.getCells().hasDirty());
+    render(panel);
+    assertEquals(drawn + 1, glyphsDrawn(panel));
+
+    panel.withEachTile(new TileTransformer() {
+      public void transformTile(int x, int y, AsciiCharacterData data) {
+        data.foregroundColor = new Color(data.foregroundColor.getRGB());
+      }
+    });
+    assertFalse(panel.getCells().hasDirty());
+  }
+
+  @Test
+  public void testParallelRasterMatchesInline() {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      AsciiPanel inline = new AsciiPanel(40, 25);
+      AsciiPanel parallel = new AsciiPanel(40, 25);
+      inline.setRenderMode(RenderMode.RASTER);
+      parallel.setRenderMode(RenderMode.RASTER);
+      parallel.setRenderExecutor(executor);
+      parallel.setParallelThreshold(1);
+
+      fillRandomly(inline, 11);
+      fillRandomly(parallel, 11);
+      assertSamePixels(render(inline), render(parallel));
+
+      inline.write("partial", 5, 20);
+      parallel.write("partial", 5, 20);
+      inline.write("update", 30, 2);
+      parallel.write("update", 30, 2);
+      assertSamePixels(render(inline), render(parallel));
+      assertFalse(parallel.getCells().hasDirty());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testCommittedFramesArePaintedTogether() throws Exception {
+    final AsciiPanel panel = new AsciiPanel(8, 4);
+    render(panel);
+    final CellBuffer back = panel.getBackBuffer();
+
+    Thread producer = new Thread(new Runnable() {
+      public void run() {
+        back.set(0, 0, 'a', AsciiPanel.brightRed.getRGB(), AsciiPanel.black.getRGB());
+        panel.commit();
+        back.set(7, 3, 'b', AsciiPanel.brightRed.getRGB(), AsciiPanel.black.getRGB());
+        back.set(0, 0, 'c', AsciiPanel.brightRed.getRGB(), AsciiPanel.black.getRGB());
+        back.set(1, 1, 'd', AsciiPanel.brightRed.getRGB(), AsciiPanel.black.getRGB());
+      }
+    });
+    producer.start();
+    producer.join();
+
+    assertTrue(panel.hasPendingFrame());
+    assertEquals(' ', panel.getCells().getCharacter(0, 0));
+    render(panel);
+    assertFalse(panel.hasPendingFrame());
+    assertEquals('a', panel.getCells().getCharacter(0, 0));
+    assertEquals(' ', panel.getCells().getCharacter(7, 3));
+
+    panel.commit();
+    BufferedImage image = render(panel);
+    assertEquals('c', panel.getCells().getCharacter(0, 0));
+    assertEquals('b', panel.getCells().getCharacter(7, 3));
+    assertEquals('d', panel.getCells().getCharacter(1, 1));
+
+    AsciiPanel expected = new AsciiPanel(8, 4);
+    expected.write('c', 0, 0, AsciiPanel.brightRed, AsciiPanel.black);
+    expected.write('b', 7, 3, AsciiPanel.brightRed, AsciiPanel.black);
+    expected.write('d', 1, 1, AsciiPanel.brightRed, AsciiPanel.black);
+    assertSamePixels(render(expected), image);
+  }
+
+  private static AsciiPanel scrolledCopy(AsciiPanel panel, int x, int y, int w, int h, int dx, int dy) {
+    CellBuffer cells = panel.getCells();
+    AsciiPanel expected = new AsciiPanel(panel.getWidthInCharacters(), panel.getHeightInCharacters(), panel.getAsciiFont());
+    expected.setRenderMode(panel.getRenderMode());
+    for (int cy = 0; cy < panel.getHeightInCharacters(); cy++) {
+      for (int cx = 0; cx < panel.getWidthInCharacters(); cx++) {
+        int sx = cx;
+        int sy = cy;
+        if (cx >= x && cx < x + w && cy >= y && cy < y + h) {
+          sx = cx - dx;
+          sy = cy - dy;
+          if (sx < x || sx >= x + w || sy < y || sy >= y + h) {
+            expected.write(' ', cx, cy, AsciiPanel.white, AsciiPanel.black);
+            continue;
+          }
+        }
+        expected.write(cells.getCharacter(sx, sy), cx, cy,
+            new Color(cells.getForeground(sx, sy)), new Color(cells.getBackground(sx, sy)));
+      }
+    }
+    return expected;
+  }
+
+  @Test
+  public void testScrollMatchesRewrite() {
+    int[][] offsets = { { 0, -1 }, { 0, 2 }, { 3, 0 }, { -2, 1 }, { 1, -3 }, { 0, 9 } };
+    for (RenderMode mode : RenderMode.values()) {
+      for (int[] offset : offsets) {
+        AsciiPanel panel = new AsciiPanel(16, 9, AsciiFont.CP437_8x8);
+        panel.setRenderMode(mode);
+        fillRandomly(panel, 11);
+        BufferedImage image = render(panel);
+
+        // leave a few cells dirty so they have to move along with the scroll
+        panel.write("xyz", 3, 4, AsciiPanel.brightGreen, AsciiPanel.red);
+        AsciiPanel expected = scrolledCopy(panel, 2, 1, 12, 7, offset[0], offset[1]);
+
+        panel.scroll(2, 1, 12, 7, offset[0], offset[1]);
+        Graphics g = image.getGraphics();
+        panel.paint(g);
+        g.dispose();
+
+        assertSamePixels(render(expected), image);
+      }
+    }
+  }
+
+  @Test
+  public void testScrollingOneLineOnlyDrawsTheExposedLine() {
+    AsciiPanel panel = new AsciiPanel(100, 40, AsciiFont.CP437_8x8);
+    fillRandomly(panel, 5);
+    render(panel);
+
+    long drawn = glyphsDrawn(panel);
+    panel.scroll(0, 0, 100, 40, 0, -1);
+    assertEquals(100, panel.getCells().countDirty());
+    render(panel);
+    assertEquals(drawn + 100, glyphsDrawn(panel));
+  }
+
+  @Test
+  public void testPackedColorOverloadsMatchColorOverloads() {
+    AsciiPanel packed = new AsciiPanel(20, 6, AsciiFont.CP437_8x8);
+    AsciiPanel boxed = new AsciiPanel(20, 6, AsciiFont.CP437_8x8);
+
+    packed.clear('.', 0xff203040, 0xff000010);
+    boxed.clear('.', new Color(0xff203040), new Color(0xff000010));
+    packed.clear('#', 2, 1, 5, 2, 0xffff8000, 0xff101010);
+    boxed.clear('#', 2, 1, 5, 2, new Color(0xffff8000), new Color(0xff101010));
+    for (int x = 0; x < 20; x++) {
+      int shade = 0xff000000 | (x * 12) << 16 | (x * 6) << 8;
+      packed.write('~', x, 4, shade, 0xff000000 | x);
+      boxed.write('~', x, 4, new Color(shade), new Color(0xff000000 | x));
+    }
+    packed.write("lit", 10, 1, 0xffffff00);
+    boxed.write("lit", 10, 1, new Color(0xffffff00));
+    packed.writeCenter("fog", 5, 0xff808080, 0xff202020);
+    boxed.writeCenter("fog", 5, new Color(0xff808080), new Color(0xff202020));
+
+    assertSamePixels(render(boxed), render(packed));
+    assertEquals(boxed.getCursorX(), packed.getCursorX());
+  }
+}
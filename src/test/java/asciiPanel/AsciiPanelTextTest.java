@@ -0,0 +1,113 @@
+package asciiPanel;
+
+import java.awt.Rectangle;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsciiPanelTextTest {
+
+  private static final int FG = 0xffc0c0c0;
+  private static final int BG = 0xff000000;
+
+  private static String row(AsciiPanel panel, int y) {
+    StringBuilder row = new StringBuilder();
+    for (int x = 0; x < panel.getWidthInCharacters(); x++)
+      row.append(panel.getCells().getCharacter(x, y));
+    return row.toString();
+  }
+
+  @Test
+  public void testCharSequenceWriteMarksOneSpan() {
+    AsciiPanel panel = new AsciiPanel(20, 3, AsciiFont.CP437_8x8);
+    panel.getCells().clearDirty();
+    StringBuilder text = new StringBuilder("hp 12");
+
+    panel.write(text, 2, 1, FG, BG);
+    assertEquals("  hp 12             ", row(panel, 1));
+    assertEquals(new Rectangle(2, 1, 5, 1), panel.getCells().getDirtyBounds());
+    assertEquals(7, panel.getCursorX());
+
+    panel.getCells().clearDirty();
+    text.setLength(0);
+    text.append("hp 10");
+    panel.write(text, 2, 1, FG, BG);
+    assertEquals(new Rectangle(6, 1, 1, 1), panel.getCells().getDirtyBounds());
+  }
+
+  @Test
+  public void testCharArraySlice() {
+    AsciiPanel panel = new AsciiPanel(20, 3, AsciiFont.CP437_8x8);
+    char[] buffer = "xxgoldxx".toCharArray();
+    panel.write(buffer, 2, 4, 0, 0, FG, BG);
+    assertEquals("gold                ", row(panel, 0));
+  }
+
+  @Test
+  public void testInvalidCharacterWritesNothing() {
+    AsciiPanel panel = new AsciiPanel(20, 3, AsciiFont.CP437_8x8);
+    panel.getCells().clearDirty();
+    try {
+      panel.write("ab\u0100", 0, 0, FG, BG);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertFalse(panel.getCells().hasDirty());
+    }
+  }
+
+  @Test
+  public void testWriteClipped() {
+    AsciiPanel panel = new AsciiPanel(10, 3, AsciiFont.CP437_8x8);
+    panel.writeClipped("goblin", -2, 0, FG, BG);
+    panel.writeClipped("goblin", 7, 1, FG, BG);
+    panel.writeClipped("goblin", 0, 5, FG, BG);
+    panel.writeClipped("goblin", 12, 2, FG, BG);
+    assertEquals("blin      ", row(panel, 0));
+    assertEquals("       gob", row(panel, 1));
+    assertEquals("          ", row(panel, 2));
+  }
+
+  @Test
+  public void testWriteWrapped() {
+    AsciiPanel panel = new AsciiPanel(12, 6, AsciiFont.CP437_8x8);
+    int rows = panel.writeWrapped("The goblin hits you.\nAn extraordinarily long word", 1, 0, 10, 6, FG, BG);
+    assertEquals(6, rows);
+    assertEquals(" The goblin ", row(panel, 0));
+    assertEquals(" hits you.  ", row(panel, 1));
+    assertEquals(" An         ", row(panel, 2));
+    assertEquals(" extraordin ", row(panel, 3));
+    assertEquals(" arily long ", row(panel, 4));
+    assertEquals(" word       ", row(panel, 5));
+  }
+
+  @Test
+  public void testWriteWrappedDropsLinesThatDoNotFit() {
+    AsciiPanel panel = new AsciiPanel(6, 3, AsciiFont.CP437_8x8);
+    assertEquals(2, panel.writeWrapped("one two three", 0, 1, 6, 2, FG, BG));
+    assertEquals("      ", row(panel, 0));
+    assertEquals("one   ", row(panel, 1));
+    assertEquals("two   ", row(panel, 2));
+  }
+
+  @Test
+  public void testWriteWrappedOnlyRepaintsWhenWriting() throws Exception {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    FrameScheduler scheduler = panel.startFrameScheduler(FrameScheduler.MANUAL);
+    Runnable nothing = new Runnable() {
+      public void run() {
+      }
+    };
+
+    assertEquals(2, panel.writeWrapped("   \n  ", 0, 0, 10, 4, FG, BG));
+    scheduler.requestFrame();
+    SwingUtilities.invokeAndWait(nothing);
+    assertEquals(0, scheduler.getFramesPainted());
+
+    panel.writeWrapped("a", 0, 0, 10, 4, FG, BG);
+    scheduler.requestFrame();
+    SwingUtilities.invokeAndWait(nothing);
+    assertEquals(1, scheduler.getFramesPainted());
+    panel.stopFrameScheduler();
+  }
+}
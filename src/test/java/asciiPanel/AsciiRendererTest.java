@@ -0,0 +1,153 @@
+package asciiPanel;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AsciiRendererTest {
+
+  private static void fillRandomly(CellBuffer cells, long seed) {
+    Random random = new Random(seed);
+    for (int y = 0; y < cells.getHeight(); y++) {
+      for (int x = 0; x < cells.getWidth(); x++) {
+        cells.set(x, y, (char) random.nextInt(256), 0xff000000 | random.nextInt(), 0xff000000 | random.nextInt());
+      }
+    }
+  }
+
+  @Test
+  public void testRenderIntoCallerImage() {
+    AsciiRenderer renderer = new AsciiRenderer(16, 8, AsciiFont.CP437_8x8);
+    fillRandomly(renderer.getCells(), 5);
+
+    BufferedImage target = new BufferedImage(renderer.getPixelWidth(), renderer.getPixelHeight(), BufferedImage.TYPE_INT_ARGB);
+    renderer.render(target);
+    assertTrue(renderer.getCells().hasDirty());
+
+    renderer.render();
+    AsciiPanelRenderTest.assertSamePixels(renderer.getImage(), target);
+  }
+
+  @Test
+  public void testRenderIntoPixelArrayWithOffset() {
+    AsciiRenderer renderer = new AsciiRenderer(4, 3, AsciiFont.CP437_10x10);
+    renderer.getCells().fill(0, 0, 4, 3, 'A', 0xffffffff, 0xff0000ff);
+
+    int scanline = renderer.getPixelWidth() + 7;
+    int[] pixels = new int[5 + scanline * renderer.getPixelHeight()];
+    renderer.render(pixels, 5, scanline);
+
+    BufferedImage expected = new BufferedImage(renderer.getPixelWidth(), renderer.getPixelHeight(), BufferedImage.TYPE_INT_RGB);
+    renderer.render(expected);
+    for (int y = 0; y < renderer.getPixelHeight(); y++) {
+      for (int x = 0; x < renderer.getPixelWidth(); x++) {
+        assertEquals(expected.getRGB(x, y), pixels[5 + y * scanline + x]);
+      }
+    }
+  }
+
+  @Test
+  public void testIncrementalRenderMatchesFullRender() {
+    AsciiRenderer renderer = new AsciiRenderer(30, 10, null);
+    renderer.setRenderMode(RenderMode.RASTER);
+    fillRandomly(renderer.getCells(), 9);
+    renderer.render();
+
+    renderer.getCells().fill(3, 3, 10, 2, '#', 0xffff0000, 0xff000000);
+    renderer.render();
+    assertFalse(renderer.getCells().hasDirty());
+
+    BufferedImage full = new BufferedImage(renderer.getPixelWidth(), renderer.getPixelHeight(), BufferedImage.TYPE_INT_RGB);
+    renderer.render(full);
+    AsciiPanelRenderTest.assertSamePixels(full, renderer.getImage());
+  }
+
+  @Test
+  public void testRenderIntoSubimage() {
+    AsciiRenderer renderer = new AsciiRenderer(5, 3, AsciiFont.CP437_8x8);
+    fillRandomly(renderer.getCells(), 11);
+    BufferedImage expected = new BufferedImage(renderer.getPixelWidth(), renderer.getPixelHeight(), BufferedImage.TYPE_INT_ARGB);
+    renderer.render(expected);
+
+    BufferedImage parent = new BufferedImage(renderer.getPixelWidth() + 9, renderer.getPixelHeight() + 6, BufferedImage.TYPE_INT_ARGB);
+    renderer.render(parent.getSubimage(7, 4, renderer.getPixelWidth(), renderer.getPixelHeight()));
+
+    for (int y = 0; y < parent.getHeight(); y++) {
+      for (int x = 0; x < parent.getWidth(); x++) {
+        boolean inside = x >= 7 && y >= 4 && x < 7 + renderer.getPixelWidth() && y < 4 + renderer.getPixelHeight();
+        assertEquals(x + "," + y, inside ? expected.getRGB(x - 7, y - 4) : 0, parent.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testRenderIntoBgrImage() {
+    new AsciiRenderer(1, 1, AsciiFont.CP437_8x8).render(new BufferedImage(8, 8, BufferedImage.TYPE_INT_BGR));
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testRenderIntoTooSmallImage() {
+    AsciiRenderer renderer = new AsciiRenderer(4, 4, null);
+    renderer.render(new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB));
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testRenderIntoNonIntImage() {
+    AsciiRenderer renderer = new AsciiRenderer(1, 1, AsciiFont.CP437_8x8);
+    renderer.render(new BufferedImage(8, 8, BufferedImage.TYPE_3BYTE_BGR));
+  }
+
+  private static void assertMagnified(BufferedImage original, BufferedImage scaled, int scale) {
+    assertEquals(original.getWidth() * scale, scaled.getWidth());
+    assertEquals(original.getHeight() * scale, scaled.getHeight());
+    for (int y = 0; y < scaled.getHeight(); y++) {
+      for (int x = 0; x < scaled.getWidth(); x++) {
+        assertEquals(original.getRGB(x / scale, y / scale), scaled.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testScaledRenderIsNearestNeighbor() {
+    for (RenderMode mode : RenderMode.values()) {
+      AsciiRenderer original = new AsciiRenderer(12, 5, AsciiFont.CP437_8x8);
+      AsciiRenderer scaled = new AsciiRenderer(12, 5, AsciiFont.CP437_8x8);
+      original.setRenderMode(mode);
+      scaled.setRenderMode(mode);
+      scaled.setScale(3);
+      fillRandomly(original.getCells(), 21);
+      fillRandomly(scaled.getCells(), 21);
+
+      original.render();
+      scaled.render();
+      assertEquals(24, scaled.getCharWidth());
+      assertMagnified(original.getImage(), scaled.getImage(), 3);
+    }
+  }
+
+  @Test
+  public void testChangingScaleKeepsCellsAndFont() {
+    AsciiRenderer renderer = new AsciiRenderer(10, 4, AsciiFont.CP437_10x10);
+    GlyphAtlas atlas = renderer.getGlyphAtlas();
+    renderer.getCells().set(2, 1, '@', 0xffffffff, 0xff000000);
+    renderer.render();
+
+    renderer.setScale(2);
+    assertSame(atlas, renderer.getGlyphAtlas().scaled(1));
+    assertEquals(200, renderer.getPixelWidth());
+    assertEquals(10 * 4, renderer.getCells().countDirty());
+    assertEquals('@', renderer.getCells().getCharacter(2, 1));
+
+    GlyphAtlas doubled = renderer.getGlyphAtlas();
+    renderer.setScale(1);
+    renderer.setScale(2);
+    assertSame(doubled, renderer.getGlyphAtlas());
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testZeroScaleFail() {
+    new AsciiRenderer(10, 4, null).setScale(0);
+  }
+}
@@ -0,0 +1,178 @@
+package asciiPanel;
+
+import java.awt.Rectangle;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CellBufferTest {
+
+  @Test
+  public void testSetMarksDirty() {
+    CellBuffer cells = new CellBuffer(100, 3);
+    assertFalse(cells.hasDirty());
+
+    cells.set(70, 1, 'a', 1, 2);
+    cells.set(3, 2, 'b', 1, 2);
+
+    assertTrue(cells.isDirty(70, 1));
+    assertTrue(cells.isDirty(3, 2));
+    assertFalse(cells.isDirty(6, 1));
+    assertEquals(2, cells.countDirty());
+    assertEquals(new Rectangle(3, 1, 68, 2), cells.getDirtyBounds());
+  }
+
+  @Test
+  public void testFillMarksSectionAcrossWords() {
+    CellBuffer cells = new CellBuffer(200, 4);
+    cells.fill(60, 1, 80, 2, '#', 1, 2);
+
+    assertEquals(160, cells.countDirty());
+    assertFalse(cells.isDirty(59, 1));
+    assertTrue(cells.isDirty(60, 1));
+    assertTrue(cells.isDirty(139, 2));
+    assertFalse(cells.isDirty(140, 2));
+    assertFalse(cells.isDirty(100, 0));
+    assertEquals(new Rectangle(60, 1, 80, 2), cells.getDirtyBounds());
+  }
+
+  @Test
+  public void testClearDirty() {
+    CellBuffer cells = new CellBuffer(10, 10);
+    cells.markAllDirty();
+    assertEquals(100, cells.countDirty());
+
+    cells.clearDirty();
+    assertFalse(cells.hasDirty());
+    assertNull(cells.getDirtyBounds());
+    assertEquals(0, cells.countDirty());
+  }
+
+  @Test
+  public void testSyncViewMarksOnlyEditedCells() {
+    CellBuffer cells = new CellBuffer(4, 4);
+    AsciiCharacterData[][] view = cells.characterView();
+    cells.clearDirty();
+
+    view[2][3].character = 'q';
+    cells.syncView();
+
+    assertEquals('q', cells.getCharacter(2, 3));
+    assertEquals(1, cells.countDirty());
+    assertTrue(cells.isDirty(2, 3));
+  }
+
+  @Test
+  public void testSyncViewOnlyScansAfterTheViewIsHandedOut() {
+    CellBuffer cells = new CellBuffer(4, 4);
+    AsciiCharacterData[][] view = cells.characterView();
+    cells.syncView();
+
+    view[1][1].character = 'q';
+    cells.syncView();
+    assertEquals(0, cells.getCharacter(1, 1));
+
+    cells.characterView()[1][1].character = 'r';
+    cells.syncView();
+    assertEquals('r', cells.getCharacter(1, 1));
+  }
+
+  @Test
+  public void testWritingTheStoredValueOverwritesAViewEdit() {
+    CellBuffer cells = new CellBuffer(4, 4);
+    cells.set(1, 1, 'a', 1, 2);
+    cells.write(0, 2, "abc", 0, 3, 1, 2);
+    AsciiCharacterData[][] view = cells.characterView();
+
+    view[1][1].character = 'q';
+    view[1][2].character = 'q';
+    cells.set(1, 1, 'a', 1, 2);
+    cells.write(0, 2, "abc", 0, 3, 1, 2);
+    cells.syncView();
+
+    assertEquals('a', cells.getCharacter(1, 1));
+    assertEquals('a', view[1][1].character);
+    assertEquals('b', cells.getCharacter(1, 2));
+    assertEquals('b', view[1][2].character);
+  }
+
+  @Test
+  public void testScrollMovesCellsAndDirtyBits() {
+    CellBuffer cells = new CellBuffer(70, 4);
+    cells.set(1, 1, 'a', 1, 2);
+    cells.set(65, 2, 'b', 1, 2);
+    cells.clearDirty();
+    cells.markDirty(65, 2);
+
+    cells.scroll(0, 0, 70, 4, -1, 1, ' ', 3, 4);
+
+    assertEquals('a', cells.getCharacter(0, 2));
+    assertEquals('b', cells.getCharacter(64, 3));
+    assertEquals(' ', cells.getCharacter(69, 3));
+    assertEquals(4, cells.getBackground(5, 0));
+    assertTrue(cells.isDirty(64, 3));
+    assertFalse(cells.isDirty(0, 2));
+    assertFalse(cells.isDirty(65, 2));
+    assertEquals(70 + 3 + 1, cells.countDirty());
+  }
+
+  private static final CellTransformer DARKEN_RIGHT_HALF = new CellTransformer() {
+    public void transformCell(int x, int y, CellData cell) {
+      if (x >= 150)
+        cell.foreground = 0xff000000 | (cell.foreground & 0xfefefe) >> 1;
+    }
+  };
+
+  @Test
+  public void testTransformMarksOnlyChangedCells() {
+    CellBuffer cells = new CellBuffer(200, 40);
+    cells.fill(0, 0, 200, 40, 'a', 0xffc0c0c0, 0xff000000);
+    cells.clearDirty();
+
+    cells.transform(100, 10, 100, 20, DARKEN_RIGHT_HALF);
+
+    assertEquals(new Rectangle(150, 10, 50, 20), cells.getDirtyBounds());
+    assertEquals(50 * 20, cells.countDirty());
+    assertEquals(0xff606060, cells.getForeground(199, 29));
+    assertEquals(0xffc0c0c0, cells.getForeground(199, 30));
+    assertEquals(0xffc0c0c0, cells.getForeground(149, 10));
+  }
+
+  @Test
+  public void testTransformVisitsRowByRow() {
+    CellBuffer cells = new CellBuffer(3, 2);
+    final StringBuilder order = new StringBuilder();
+    cells.transform(0, 0, 3, 2, new CellTransformer() {
+      public void transformCell(int x, int y, CellData cell) {
+        order.append(x).append(y).append(' ');
+      }
+    });
+    assertEquals("00 10 20 01 11 21 ", order.toString());
+    assertFalse(cells.hasDirty());
+  }
+
+  @Test
+  public void testParallelTransformMatchesSequential() {
+    CellBuffer sequential = new CellBuffer(200, 300);
+    CellBuffer parallel = new CellBuffer(200, 300);
+    for (CellBuffer cells : new CellBuffer[] { sequential, parallel }) {
+      for (int y = 0; y < 300; y++)
+        for (int x = 0; x < 200; x++)
+          cells.set(x, y, (char) (x + y), 0xff000000 | x * y, 0xff000000 | y);
+      cells.clearDirty();
+    }
+
+    sequential.transform(0, 5, 200, 290, DARKEN_RIGHT_HALF);
+    parallel.transformParallel(0, 5, 200, 290, DARKEN_RIGHT_HALF, new ForkJoinPool(4));
+
+    assertEquals(sequential.getDirtyBounds(), parallel.getDirtyBounds());
+    assertEquals(sequential.countDirty(), parallel.countDirty());
+    for (int y = 0; y < 300; y++) {
+      for (int x = 0; x < 200; x++) {
+        assertEquals(sequential.getForeground(x, y), parallel.getForeground(x, y));
+        assertEquals(sequential.isDirty(x, y), parallel.isDirty(x, y));
+      }
+    }
+  }
+}
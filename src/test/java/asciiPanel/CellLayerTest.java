@@ -0,0 +1,132 @@
+package asciiPanel;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CellLayerTest {
+
+  private static final int GRAY = 0xffc0c0c0;
+  private static final int BLACK = 0xff000000;
+  private static final int GREEN = 0xff00ff00;
+  private static final int RED = 0xffff0000;
+
+  @Test
+  public void testTopmostOpaquePartWins() {
+    AsciiRenderer renderer = new AsciiRenderer(5, 3, AsciiFont.CP437_8x8);
+    CellLayer floor = renderer.addLayer();
+    CellLayer actors = renderer.addLayer();
+
+    floor.fill(0, 0, 5, 3, '.', GRAY, GREEN, CellLayer.OPAQUE);
+    actors.set(2, 1, '@', RED, BLACK, CellLayer.GLYPH | CellLayer.FOREGROUND);
+    renderer.compositeLayers();
+
+    CellBuffer cells = renderer.getCells();
+    assertEquals('@', cells.getCharacter(2, 1));
+    assertEquals(RED, cells.getForeground(2, 1));
+    assertEquals(GREEN, cells.getBackground(2, 1));
+    assertEquals('.', cells.getCharacter(1, 1));
+    assertFalse(floor.hasDirty());
+  }
+
+  @Test
+  public void testMovingAnActorOnlyTouchesTwoCells() {
+    AsciiRenderer renderer = new AsciiRenderer(40, 20, AsciiFont.CP437_8x8);
+    CellLayer floor = renderer.addLayer();
+    CellLayer items = renderer.addLayer();
+    CellLayer actors = renderer.addLayer();
+    floor.fill(0, 0, 40, 20, '.', GRAY, BLACK, CellLayer.OPAQUE);
+    items.set(5, 5, '$', GREEN, BLACK, CellLayer.GLYPH | CellLayer.FOREGROUND);
+    actors.set(4, 5, '@', RED, BLACK, CellLayer.GLYPH | CellLayer.FOREGROUND);
+    renderer.render();
+
+    actors.clear(4, 5);
+    actors.set(5, 5, '@', RED, BLACK, CellLayer.GLYPH | CellLayer.FOREGROUND);
+    renderer.compositeLayers();
+
+    CellBuffer cells = renderer.getCells();
+    assertEquals(2, cells.countDirty());
+    assertEquals('.', cells.getCharacter(4, 5));
+    assertEquals('@', cells.getCharacter(5, 5));
+
+    actors.clear(5, 5);
+    renderer.render();
+    assertEquals('$', cells.getCharacter(5, 5));
+  }
+
+  @Test
+  public void testUncoveredCellsShowFallback() {
+    AsciiRenderer renderer = new AsciiRenderer(3, 1, null);
+    CellLayer layer = renderer.addLayer();
+    layer.set(0, 0, 'a', RED, GREEN);
+    renderer.setLayerFallback('x', GRAY, BLACK);
+    renderer.compositeLayers();
+
+    CellBuffer cells = renderer.getCells();
+    assertEquals('a', cells.getCharacter(0, 0));
+    assertEquals('x', cells.getCharacter(2, 0));
+    assertEquals(BLACK, cells.getBackground(2, 0));
+
+    renderer.removeLayer(layer);
+    renderer.addLayer();
+    renderer.compositeLayers();
+    assertEquals('x', cells.getCharacter(0, 0));
+    assertEquals(1, renderer.getLayers().size());
+  }
+
+  @Test
+  public void testLayerOrder() {
+    AsciiRenderer renderer = new AsciiRenderer(1, 1, null);
+    CellLayer top = renderer.addLayer();
+    CellLayer bottom = renderer.addLayer(0);
+    top.set(0, 0, 't', RED, BLACK);
+    bottom.set(0, 0, 'b', RED, BLACK);
+    renderer.compositeLayers();
+
+    assertSame(bottom, renderer.getLayers().get(0));
+    assertEquals('t', renderer.getCells().getCharacter(0, 0));
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testInvalidOpacityFail() {
+    new AsciiRenderer(1, 1, null).addLayer().setOpacity(0, 0, 8);
+  }
+
+  @Test
+  public void testUnchangedWritesDoNotNotify() {
+    CellLayer layer = new AsciiRenderer(4, 4, null).addLayer();
+    final int[] changes = new int[1];
+    layer.changeListener = new Runnable() {
+      public void run() {
+        changes[0]++;
+      }
+    };
+
+    layer.set(1, 1, 'a', RED, BLACK);
+    layer.set(1, 1, 'a', RED, BLACK);
+    layer.fill(0, 0, 2, 2, '.', GRAY, BLACK, CellLayer.OPAQUE);
+    layer.fill(0, 0, 2, 2, '.', GRAY, BLACK, CellLayer.OPAQUE);
+    layer.fillOpacity(0, 0, 2, 2, CellLayer.OPAQUE);
+    layer.setOpacity(0, 0, CellLayer.OPAQUE);
+    assertEquals(2, changes[0]);
+
+    layer.clear();
+    layer.clear();
+    assertEquals(3, changes[0]);
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testSetOutOfBoundsFail() {
+    new AsciiRenderer(4, 4, null).addLayer().set(4, 0, 'a', RED, BLACK);
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testFillOutOfBoundsFail() {
+    new AsciiRenderer(4, 4, null).addLayer().fill(2, 2, 3, 1, 'a', RED, BLACK, CellLayer.OPAQUE);
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testFillOpacityOutOfBoundsFail() {
+    new AsciiRenderer(4, 4, null).addLayer().fillOpacity(0, -1, 1, 1, CellLayer.OPAQUE);
+  }
+}
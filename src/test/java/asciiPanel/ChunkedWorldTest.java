@@ -0,0 +1,119 @@
+package asciiPanel;
+
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class ChunkedWorldTest {
+
+  private static final int FLOOR_FG = 0xff808080;
+  private static final int FLOOR_BG = 0xff000000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static ChunkedWorld world() {
+    return new ChunkedWorld(8000, 8000, '.', FLOOR_FG, FLOOR_BG);
+  }
+
+  @Test
+  public void testUnwrittenChunksAreNotAllocated() {
+    ChunkedWorld world = world();
+    assertEquals('.', world.getCharacter(7999, 7999));
+    world.set(100, 100, '.', FLOOR_FG, FLOOR_BG);
+    assertEquals(0, world.getAllocatedChunkCount());
+
+    world.set(100, 100, '#', 0xffffffff, FLOOR_BG);
+    world.fill(60, 0, 10, 3, '~', 0xff0000ff, FLOOR_BG);
+    assertEquals(3, world.getAllocatedChunkCount());
+    assertEquals('#', world.getCharacter(100, 100));
+    assertEquals('~', world.getCharacter(63, 2));
+    assertEquals('~', world.getCharacter(64, 2));
+    assertEquals('.', world.getCharacter(70, 2));
+  }
+
+  @Test
+  public void testColdChunksSpillAndComeBack() throws Exception {
+    ChunkedWorld world = world();
+    world.enableSpilling(folder.newFile("chunks.spill"), 2);
+
+    Random random = new Random(8);
+    char[] written = new char[20];
+    for (int i = 0; i < written.length; i++) {
+      written[i] = (char) ('a' + random.nextInt(26));
+      world.set(i * 64 + 5, i * 64 + 7, written[i], 0xff000000 | i, FLOOR_BG);
+    }
+    assertEquals(2, world.getResidentChunkCount());
+    assertEquals(20, world.getAllocatedChunkCount());
+
+    for (int i = 0; i < written.length; i++) {
+      assertEquals(written[i], world.getCharacter(i * 64 + 5, i * 64 + 7));
+      assertEquals(0xff000000 | i, world.getForeground(i * 64 + 5, i * 64 + 7));
+    }
+    world.close();
+  }
+
+  @Test
+  public void testCopyToFillsOutsideWithDefault() {
+    ChunkedWorld world = new ChunkedWorld(100, 100, '.', FLOOR_FG, FLOOR_BG);
+    world.set(0, 0, '@', 0xffffffff, FLOOR_BG);
+    world.set(70, 1, '$', 0xffffff00, FLOOR_BG);
+
+    CellBuffer cells = new CellBuffer(80, 4);
+    world.copyTo(-2, -1, cells, 0, 0, 80, 4);
+
+    assertEquals('@', cells.getCharacter(2, 1));
+    assertEquals('$', cells.getCharacter(72, 2));
+    assertEquals('.', cells.getCharacter(0, 0));
+    assertEquals(FLOOR_FG, cells.getForeground(79, 3));
+  }
+
+  private static void assertShowsWorld(ChunkedWorld world, WorldViewport viewport) {
+    AsciiPanel panel = viewport.getPanel();
+    for (int y = 0; y < panel.getHeightInCharacters(); y++) {
+      for (int x = 0; x < panel.getWidthInCharacters(); x++) {
+        int wx = viewport.getCameraX() + x;
+        int wy = viewport.getCameraY() + y;
+        boolean inside = wx >= 0 && wy >= 0 && wx < world.getWidth() && wy < world.getHeight();
+        assertEquals(x + "," + y, inside ? world.getCharacter(wx, wy) : '.', panel.getCells().getCharacter(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testViewportFollowsCamera() {
+    ChunkedWorld world = new ChunkedWorld(300, 200, '.', FLOOR_FG, FLOOR_BG);
+    Random random = new Random(4);
+    for (int i = 0; i < 3000; i++)
+      world.set(random.nextInt(300), random.nextInt(200), (char) ('A' + random.nextInt(26)), 0xffffffff, FLOOR_BG);
+
+    AsciiPanel panel = new AsciiPanel(40, 20, AsciiFont.CP437_8x8);
+    WorldViewport viewport = new WorldViewport(world, panel);
+    assertShowsWorld(world, viewport);
+
+    int[][] moves = { { 1, 0 }, { 0, 1 }, { -3, 2 }, { 60, 0 }, { 5, -7 }, { -300, 0 }, { 280, 190 } };
+    for (int[] move : moves) {
+      viewport.moveCamera(move[0], move[1]);
+      assertShowsWorld(world, viewport);
+    }
+  }
+
+  @Test
+  public void testSingleStepOnlyDirtiesExposedColumn() {
+    ChunkedWorld world = new ChunkedWorld(300, 200, '.', FLOOR_FG, FLOOR_BG);
+    world.fill(0, 0, 300, 200, '#', 0xffffffff, FLOOR_BG);
+    for (int x = 0; x < 300; x += 3)
+      world.set(x, 5, 'o', 0xffff0000, FLOOR_BG);
+
+    AsciiPanel panel = new AsciiPanel(40, 20, AsciiFont.CP437_8x8);
+    WorldViewport viewport = new WorldViewport(world, panel);
+    panel.getCells().clearDirty();
+
+    viewport.moveCamera(1, 0);
+    assertEquals(20, panel.getCells().countDirty());
+    assertShowsWorld(world, viewport);
+  }
+}
@@ -0,0 +1,65 @@
+package asciiPanel;
+
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ColorizedGlyphCacheTest {
+
+  private static BufferedImage image() {
+    return new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    ColorizedGlyphCache cache = new ColorizedGlyphCache(4);
+    BufferedImage img = image();
+
+    assertNull(cache.get('a', 0xffffffff, 0xff000000));
+    cache.put('a', 0xffffffff, 0xff000000, img);
+    assertSame(img, cache.get('a', 0xffffffff, 0xff000000));
+    assertNull(cache.get('a', 0xff000000, 0xffffffff));
+
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() {
+    ColorizedGlyphCache cache = new ColorizedGlyphCache(2);
+    cache.put('a', 1, 2, image());
+    cache.put('b', 1, 2, image());
+    cache.get('a', 1, 2);
+    cache.put('c', 1, 2, image());
+
+    assertEquals(2, cache.size());
+    assertNotNull(cache.get('a', 1, 2));
+    assertNull(cache.get('b', 1, 2));
+    assertNotNull(cache.get('c', 1, 2));
+  }
+
+  @Test
+  public void testShrinkingEvicts() {
+    ColorizedGlyphCache cache = new ColorizedGlyphCache(8);
+    for (char c = 'a'; c < 'h'; c++)
+      cache.put(c, 1, 2, image());
+
+    cache.setMaximumSize(3);
+    assertEquals(3, cache.size());
+    assertNotNull(cache.get('g', 1, 2));
+    assertNull(cache.get('a', 1, 2));
+  }
+
+  @Test
+  public void testZeroSizeDisablesCaching() {
+    ColorizedGlyphCache cache = new ColorizedGlyphCache(0);
+    cache.put('a', 1, 2, image());
+    assertEquals(0, cache.size());
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testNegativeSizeFail() {
+    new ColorizedGlyphCache(-1);
+  }
+}
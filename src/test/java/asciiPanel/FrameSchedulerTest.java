@@ -0,0 +1,132 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameSchedulerTest {
+
+  private static void drainEventQueue() throws Exception {
+    SwingUtilities.invokeAndWait(new Runnable() {
+      public void run() {
+      }
+    });
+  }
+
+  @Test
+  public void testManualModeOnlyPaintsOnRequest() throws Exception {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    FrameScheduler scheduler = panel.startFrameScheduler(FrameScheduler.MANUAL);
+    assertTrue(scheduler.isManual());
+    assertSame(scheduler, panel.getFrameScheduler());
+
+    panel.write('a', 1, 1, Color.red, Color.black);
+    panel.write('b', 2, 1, Color.red, Color.black);
+    drainEventQueue();
+    assertEquals(0, scheduler.getFramesPainted());
+
+    scheduler.requestFrame();
+    scheduler.requestFrame();
+    drainEventQueue();
+    drainEventQueue();
+    assertEquals(1, scheduler.getFramesPainted());
+
+    panel.stopFrameScheduler();
+    assertNull(panel.getFrameScheduler());
+    assertFalse(scheduler.isRunning());
+    scheduler.requestFrame();
+    drainEventQueue();
+    assertEquals(1, scheduler.getFramesPainted());
+  }
+
+  @Test
+  public void testFixedRateOnlyPaintsWhenDirty() throws Exception {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    TestClock clock = new TestClock();
+    FrameScheduler scheduler = panel.startFrameScheduler(new FrameScheduler(panel, 100, clock));
+    try {
+      clock.advance(10);
+      scheduler.tick();
+      drainEventQueue();
+      assertEquals(0, scheduler.getFramesPainted());
+
+      panel.write('a', 1, 1, Color.red, Color.black);
+      clock.advance(10);
+      scheduler.tick();
+      drainEventQueue();
+      assertEquals(1, scheduler.getFramesPainted());
+
+      clock.advance(10);
+      scheduler.tick();
+      drainEventQueue();
+      assertEquals(1, scheduler.getFramesPainted());
+      assertEquals(0, scheduler.getFramesDropped());
+      assertEquals(0, scheduler.getMissedDeadlines());
+    } finally {
+      panel.stopFrameScheduler();
+    }
+  }
+
+  @Test
+  public void testBusyEventThreadDropsFrames() throws Exception {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    TestClock clock = new TestClock();
+    FrameScheduler scheduler = panel.startFrameScheduler(new FrameScheduler(panel, 200, clock));
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          blocked.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+      panel.write('a', 1, 1, Color.red, Color.black);
+      clock.advance(5);
+      scheduler.tick();
+      clock.advance(5);
+      scheduler.tick();
+      assertEquals(1, scheduler.getFramesDropped());
+
+      clock.advance(15);
+      scheduler.tick();
+      assertEquals(4, scheduler.getFramesDropped());
+
+      release.countDown();
+      drainEventQueue();
+      assertEquals(1, scheduler.getFramesPainted());
+      assertEquals(1, scheduler.getMissedDeadlines());
+    } finally {
+      release.countDown();
+      panel.stopFrameScheduler();
+    }
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testNegativeFrameRate() {
+    new AsciiPanel(10, 4, AsciiFont.CP437_8x8).startFrameScheduler(-1);
+  }
+
+  private static class TestClock implements FrameScheduler.Clock {
+    private final AtomicLong now = new AtomicLong();
+
+    void advance(long millis) {
+      now.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    public long nanoTime() {
+      return now.get();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+package asciiPanel;
+
+import java.awt.image.BufferedImage;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GlyphAtlasTest {
+
+  @Test
+  public void testSameFontSharesOneAtlas() {
+    GlyphAtlas first = GlyphAtlas.forFont(AsciiFont.CP437_12x12);
+    GlyphAtlas second = GlyphAtlas.forFont(new AsciiFont("cp437_12x12.png", 12, 12));
+
+    assertSame(first, second);
+    assertEquals(12, first.getCharWidth());
+    assertEquals(256, first.getGlyphCount());
+  }
+
+  @Test
+  public void testRenderersShareAtlas() {
+    AsciiRenderer map = new AsciiRenderer(80, 24, AsciiFont.CP437_10x10);
+    AsciiRenderer log = new AsciiRenderer(40, 5, AsciiFont.CP437_10x10);
+    assertSame(map.getGlyphAtlas(), log.getGlyphAtlas());
+
+    GlyphAtlas atlas = map.getGlyphAtlas();
+    map.setAsciiFont(AsciiFont.CP437_16x16);
+    map.setAsciiFont(AsciiFont.CP437_10x10);
+    assertSame(atlas, map.getGlyphAtlas());
+  }
+
+  @Test
+  public void testClearCacheReloads() {
+    GlyphAtlas atlas = GlyphAtlas.forFont(AsciiFont.DRAKE_10x10);
+    assertTrue(GlyphAtlas.cachedCount() >= 1);
+
+    GlyphAtlas.clearCache();
+    assertEquals(0, GlyphAtlas.cachedCount());
+    assertNotSame(atlas, GlyphAtlas.forFont(AsciiFont.DRAKE_10x10));
+  }
+
+  @Test
+  public void testFontEquality() {
+    assertEquals(AsciiFont.CP437_8x8, new AsciiFont("cp437_8x8.png", 8, 8));
+    assertEquals(AsciiFont.CP437_8x8.hashCode(), new AsciiFont("cp437_8x8.png", 8, 8).hashCode());
+    assertNotEquals(AsciiFont.CP437_8x8, new AsciiFont("cp437_8x8.png", 8, 9));
+  }
+
+  @Test
+  public void testCompiledMasksMatchSpriteSheets() throws Exception {
+    for (Field field : AsciiFont.class.getFields()) {
+      if (field.getType() != AsciiFont.class || !Modifier.isStatic(field.getModifiers()))
+        continue;
+
+      AsciiFont font = (AsciiFont) field.get(null);
+      GlyphAtlas compiled = GlyphAtlas.loadCompiled(font);
+      GlyphAtlas sheet = GlyphAtlas.loadSheet(font);
+      assertNotNull(font.getFontFilename(), compiled);
+
+      for (char c = 0; c < 256; c++)
+        assertArrayEquals(font.getFontFilename() + " glyph " + (int) c, sheet.getMask(c), compiled.getMask(c));
+    }
+  }
+
+  @Test
+  public void testCompiledGlyphImagesAreRebuilt() {
+    GlyphAtlas compiled = GlyphAtlas.loadCompiled(AsciiFont.CP437_9x16);
+    GlyphAtlas sheet = GlyphAtlas.loadSheet(AsciiFont.CP437_9x16);
+
+    BufferedImage rebuilt = compiled.getGlyph('@');
+    assertSame(rebuilt, compiled.getGlyph('@'));
+    for (int y = 0; y < 16; y++) {
+      for (int x = 0; x < 9; x++)
+        assertEquals(sheet.getGlyph('@').getRGB(x, y), rebuilt.getRGB(x, y));
+    }
+  }
+
+  @Test
+  public void testFontWithoutCompiledMasksUsesSheet() {
+    assertNull(GlyphAtlas.loadCompiled(new AsciiFont("cp437_12x12.png", 12, 11)));
+    assertEquals(11, GlyphAtlas.forFont(new AsciiFont("cp437_12x12.png", 12, 11)).getCharHeight());
+  }
+
+  @Test
+  public void testPagesLoadOnFirstUse() {
+    GlyphAtlas atlas = GlyphAtlas.loadSheet(new AsciiFont("cp437_8x8.png", 8, 8, 3));
+    assertEquals(3, atlas.getPageCount());
+    assertEquals(768, atlas.getGlyphCount());
+    assertEquals(1, atlas.getLoadedPageCount());
+
+    assertArrayEquals(atlas.getMask('A'), atlas.getMask((char) 0x141));
+    assertTrue(atlas.isPageLoaded(1));
+    assertFalse(atlas.isPageLoaded(2));
+
+    GlyphAtlas scaled = atlas.scaled(2);
+    assertArrayEquals(scaled.getMask('A'), scaled.getMask((char) 0x241));
+    assertTrue(atlas.isPageLoaded(2));
+  }
+
+  @Test
+  public void testEvictUnusedPages() {
+    GlyphAtlas atlas = GlyphAtlas.loadSheet(new AsciiFont("cp437_8x8.png", 8, 8, 3));
+    atlas.getMask((char) 0x141);
+    atlas.getMask((char) 0x241);
+
+    assertEquals(0, atlas.evictUnusedPages());
+
+    atlas.getGlyph((char) 0x141);
+    assertEquals(1, atlas.evictUnusedPages());
+    assertTrue(atlas.isPageLoaded(0));
+    assertTrue(atlas.isPageLoaded(1));
+    assertFalse(atlas.isPageLoaded(2));
+
+    assertArrayEquals(atlas.getMask('A'), atlas.getMask((char) 0x241));
+  }
+
+  @Test
+  public void testPanelDrawsGlyphsBeyondTheFirstPage() {
+    AsciiPanel paged = new AsciiPanel(4, 2, new AsciiFont("cp437_8x8.png", 8, 8, 2));
+    AsciiPanel single = new AsciiPanel(4, 2, AsciiFont.CP437_8x8);
+    paged.write((char) 0x141, 1, 1);
+    single.write('A', 1, 1);
+
+    AsciiPanelRenderTest.assertSamePixels(AsciiPanelRenderTest.render(single), AsciiPanelRenderTest.render(paged));
+  }
+
+  @Test
+  public void testGlyphsBeyondTheLastPageAreBlankAfterAFontSwitch() {
+    AsciiPanel paged = new AsciiPanel(4, 2, new AsciiFont("cp437_8x8.png", 8, 8, 2));
+    AsciiPanel single = new AsciiPanel(4, 2, AsciiFont.CP437_8x8);
+    paged.write((char) 0x141, 1, 1);
+    AsciiPanelRenderTest.render(paged);
+
+    paged.setAsciiFont(AsciiFont.CP437_8x8);
+
+    AsciiPanelRenderTest.assertSamePixels(AsciiPanelRenderTest.render(single), AsciiPanelRenderTest.render(paged));
+    assertEquals(0x141, paged.getCharacters()[1][1].character);
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testCharactersBeyondTheLastPageAreRejected() {
+    new AsciiPanel(4, 2, new AsciiFont("cp437_8x8.png", 8, 8, 2)).write((char) 0x200, 1, 1);
+  }
+}
@@ -0,0 +1,92 @@
+package asciiPanel;
+
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RenderMetricsTest {
+
+  @Test
+  public void testFrameStatsCountScannedAndRedrawnCells() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    RenderMetrics metrics = new RenderMetrics();
+    panel.addRenderListener(metrics);
+    AsciiPanelRenderTest.render(panel);
+
+    panel.write('a', 1, 1, Color.red, Color.black);
+    panel.write('b', 2, 1, Color.red, Color.black);
+    panel.write('c', 3, 1);
+    panel.write(' ', 3, 1);
+    final FrameStats[] last = new FrameStats[1];
+    panel.addRenderListener(new RenderListener() {
+      public void frameRendered(FrameStats stats) {
+        last[0] = stats;
+      }
+    });
+    AsciiPanelRenderTest.render(panel);
+
+    assertEquals(3, last[0].getCellsScanned());
+    assertEquals(2, last[0].getCellsRedrawn());
+    assertEquals(80L * 32, last[0].getPixelsBlitted());
+    assertTrue(last[0].getPaintNanos() > 0);
+
+    assertEquals(2, metrics.getFrameCount());
+    assertEquals(40 + 2, metrics.getCellsRedrawn());
+    long histogramTotal = 0;
+    for (long count : metrics.getPaintHistogram())
+      histogramTotal += count;
+    assertEquals(2, histogramTotal);
+    assertEquals(metrics.getPaintHistogramBoundsMicros().length + 1, metrics.getPaintHistogram().length);
+
+    metrics.reset();
+    assertEquals(0, metrics.getFrameCount());
+    assertEquals(0, metrics.getCellsRedrawn());
+  }
+
+  @Test
+  public void testRemovedListenerIsNotCalled() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    RenderMetrics metrics = new RenderMetrics();
+    panel.addRenderListener(metrics);
+    AsciiPanelRenderTest.render(panel);
+    panel.removeRenderListener(metrics);
+    AsciiPanelRenderTest.render(panel);
+
+    assertEquals(1, metrics.getFrameCount());
+  }
+
+  @Test
+  public void testGlyphCacheHitsArePerFrame() {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    panel.setRenderMode(RenderMode.LOOKUP_OP);
+    RenderMetrics metrics = new RenderMetrics();
+    panel.addRenderListener(metrics);
+    panel.clear('x', 0, 0, 10, 4, Color.red, Color.black);
+    AsciiPanelRenderTest.render(panel);
+
+    assertEquals(1, metrics.getGlyphCacheMisses());
+    assertEquals(39, metrics.getGlyphCacheHits());
+    assertEquals(39 / 40.0, metrics.getGlyphCacheHitRate(), 1e-9);
+  }
+
+  @Test
+  public void testRegisterMBean() throws Exception {
+    AsciiPanel panel = new AsciiPanel(10, 4, AsciiFont.CP437_8x8);
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("asciiPanel:type=RenderMetrics,name=" + ObjectName.quote("test panel"));
+
+    panel.registerMBean("test panel");
+    try {
+      AsciiPanelRenderTest.render(panel);
+      assertEquals(1L, server.getAttribute(name, "FrameCount"));
+      assertEquals(40L, server.getAttribute(name, "CellsRedrawn"));
+    } finally {
+      panel.unregisterMBean();
+    }
+    assertFalse(server.isRegistered(name));
+  }
+}
@@ -0,0 +1,213 @@
+package asciiPanel;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class SessionRecorderTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static CellBuffer snapshot(CellBuffer cells) {
+    CellBuffer copy = new CellBuffer(cells.getWidth(), cells.getHeight());
+    copy.copyFrom(cells, 0, 0, 0, 0, cells.getWidth(), cells.getHeight());
+    return copy;
+  }
+
+  private static void assertSameCells(CellBuffer expected, CellBuffer actual) {
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        String at = x + "," + y;
+        assertEquals(at, expected.getCharacter(x, y), actual.getCharacter(x, y));
+        assertEquals(at, expected.getForeground(x, y), actual.getForeground(x, y));
+        assertEquals(at, expected.getBackground(x, y), actual.getBackground(x, y));
+      }
+    }
+  }
+
+  private List<CellBuffer> record(File file, int frames, int keyframeInterval) throws Exception {
+    AsciiRenderer renderer = new AsciiRenderer(20, 8, AsciiFont.CP437_8x8);
+    CellBuffer cells = renderer.getCells();
+    cells.fill(0, 0, 20, 8, ' ', 0xffc0c0c0, 0xff000000);
+
+    SessionRecorder recorder = new SessionRecorder(file, 20, 8);
+    recorder.setKeyframeInterval(keyframeInterval);
+    renderer.setSessionRecorder(recorder);
+
+    List<CellBuffer> expected = new ArrayList<CellBuffer>();
+    expected.add(snapshot(cells));
+
+    Random random = new Random(3);
+    int[] colors = { 0xffff0000, 0xff00ff00, 0xff0000ff, 0xffffffff };
+    for (int i = 0; i < frames; i++) {
+      int x = random.nextInt(15);
+      int y = random.nextInt(6);
+      cells.fill(x, y, 1 + random.nextInt(5), 1 + random.nextInt(2), (char) random.nextInt(256),
+          colors[random.nextInt(colors.length)], colors[random.nextInt(colors.length)]);
+      cells.set(random.nextInt(20), random.nextInt(8), 'x', 0xff000000 | random.nextInt(), 0xff102030);
+      renderer.render();
+      expected.add(snapshot(cells));
+    }
+
+    recorder.close();
+    return expected;
+  }
+
+  @Test
+  public void testPlaybackReproducesEveryFrame() throws Exception {
+    File file = folder.newFile("session.ases");
+    List<CellBuffer> expected = record(file, 40, 7);
+
+    SessionPlayer player = new SessionPlayer(file);
+    try {
+      assertEquals(20, player.getWidth());
+      assertEquals(expected.size(), player.getFrameCount());
+      assertTrue(player.isKeyframe(0));
+      assertTrue(player.isKeyframe(8));
+      assertFalse(player.isKeyframe(9));
+
+      for (CellBuffer frame : expected) {
+        assertTrue(player.next());
+        assertSameCells(frame, player.getCells());
+      }
+      assertFalse(player.next());
+    } finally {
+      player.close();
+    }
+  }
+
+  @Test
+  public void testSeek() throws Exception {
+    File file = folder.newFile("session.ases");
+    List<CellBuffer> expected = record(file, 30, 10);
+
+    SessionPlayer player = new SessionPlayer(file);
+    try {
+      for (int frame : new int[] { 25, 3, 4, 30, 11, 0 }) {
+        player.seek(frame);
+        assertEquals(frame, player.getFrame());
+        assertSameCells(expected.get(frame), player.getCells());
+      }
+    } finally {
+      player.close();
+    }
+  }
+
+  @Test
+  public void testManyColorsInOneFrame() throws Exception {
+    File file = folder.newFile("session.ases");
+    AsciiRenderer renderer = new AsciiRenderer(40, 20, null);
+    CellBuffer cells = renderer.getCells();
+    for (int i = 0; i < 800; i++)
+      cells.set(i % 40, i / 40, 'a', 0xff000000 | i * 7919, 0xff000000 | i);
+
+    SessionRecorder recorder = new SessionRecorder(file, 40, 20);
+    renderer.setSessionRecorder(recorder);
+    renderer.render();
+    recorder.close();
+
+    SessionPlayer player = new SessionPlayer(file);
+    try {
+      assertTrue(player.next());
+      assertSameCells(cells, player.getCells());
+    } finally {
+      player.close();
+    }
+  }
+
+  @Test
+  public void testUnchangedCellsAreNotRecorded() throws Exception {
+    File file = folder.newFile("session.ases");
+    AsciiRenderer renderer = new AsciiRenderer(10, 4, null);
+    SessionRecorder recorder = new SessionRecorder(file, 10, 4);
+    renderer.setSessionRecorder(recorder);
+
+    renderer.getCells().markAllDirty();
+    renderer.render();
+    renderer.getCells().set(1, 1, 'a', 0xffffffff, 0xff000000);
+    renderer.render();
+    assertEquals(2, recorder.getFrameCount());
+    recorder.close();
+
+    // the keyframe plus one run of a single cell
+    assertTrue(file.length() < 13 + 13 + 4 * 40 + 13 + 20);
+  }
+
+  @Test
+  public void testTruncatedFrameIsIgnored() throws Exception {
+    File file = folder.newFile("session.ases");
+    List<CellBuffer> expected = record(file, 5, 100);
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length() - 3);
+    raf.close();
+
+    SessionPlayer player = new SessionPlayer(file);
+    try {
+      assertEquals(expected.size() - 1, player.getFrameCount());
+      player.seek(expected.size() - 2);
+      assertSameCells(expected.get(expected.size() - 2), player.getCells());
+    } finally {
+      player.close();
+    }
+  }
+
+  private File recordingOf(int... payload) throws Exception {
+    File file = folder.newFile();
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    try {
+      out.writeInt(SessionRecorder.MAGIC);
+      out.writeByte(SessionRecorder.VERSION);
+      out.writeInt(4);
+      out.writeInt(2);
+      out.writeByte(SessionRecorder.KEYFRAME);
+      out.writeLong(0);
+      out.writeInt(payload.length);
+      for (int b : payload)
+        out.writeByte(b);
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private void assertCorrupt(File file) throws Exception {
+    SessionPlayer player = new SessionPlayer(file);
+    try {
+      player.next();
+      fail("expected an IOException");
+    } catch (IOException e) {
+      assertEquals("corrupt frame at offset 13.", e.getMessage());
+    } finally {
+      player.close();
+    }
+  }
+
+  @Test
+  public void testCorruptFramesAreReported() throws Exception {
+    // one color, then a row below the grid
+    assertCorrupt(recordingOf(1, 0xff, 0, 0, 0, 3, 0, 0, 0));
+    // a run past the right edge
+    assertCorrupt(recordingOf(1, 0xff, 0, 0, 0, 1, 2, 3, 'a', 0, 0, 0, 0, 0));
+    // a color that is not in the palette
+    assertCorrupt(recordingOf(1, 0xff, 0, 0, 0, 1, 0, 1, 'a', 5, 0, 0, 0, 0));
+    // more colors than the frame holds
+    assertCorrupt(recordingOf(9, 0xff, 0, 0, 0, 0));
+  }
+
+  @Test( expected = IllegalArgumentException.class )
+  public void testRecorderSizeMustMatch() throws Exception {
+    new AsciiRenderer(10, 4, null).setSessionRecorder(new SessionRecorder(folder.newFile("session.ases"), 10, 5));
+  }
+}